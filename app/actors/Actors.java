@@ -39,6 +39,11 @@ public class Actors extends Plugin {
     public void onStart() {
         ActorSystem system = Akka.system();
 
+        if (Settings.SettingsProvider.get(system).ShardingEnabled) {
+            // Start hosting, or routing to, the sharded regions
+            RegionSharding.RegionShardingProvider.get(system);
+        }
+
         regionManagerClient = system.actorOf(RegionManagerClient.props(), "regionManagerClient");
 
         if (Cluster.get(system).getSelfRoles().stream().anyMatch(r -> r.startsWith("backend"))) {
@@ -0,0 +1,150 @@
+package actors;
+
+import models.backend.LatLng;
+import models.backend.PointOfInterest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes user-positions and remove-positions events in the compact binary format of the binary WebSocket.
+ *
+ * A frame starts with an event type byte and a flags byte, followed by the number of features as a varint.  Each
+ * feature is then written as:
+ *
+ * - its id, as a varint reference into the id dictionary of the connection, shifted left by one with the low bit
+ *   set for clusters.  A reference one past the end of the dictionary introduces a new id, followed by its length
+ *   and UTF-8 bytes, which both ends then append to their dictionary.
+ * - its timestamp, as a zig-zag varint delta from the timestamp of the previous feature in the frame.
+ * - its latitude and longitude, quantised to millionths of a degree, as zig-zag varint deltas from the previous
+ *   feature in the frame.
+ * - for clusters, its count, as a varint.
+ *
+ * A remove-positions frame has the same header, followed by the number of ids and the ids, written the same way as
+ * the ids of features, without the cluster bit.
+ *
+ * When the dictionary is full, the next frame has the reset flag set, and both ends start a new dictionary before
+ * reading it.  The dictionary makes the encoder stateful, so each connection must use its own.
+ */
+public class BinaryPositionsEncoder {
+
+    public static final int USER_POSITIONS = 1;
+    public static final int REMOVE_POSITIONS = 2;
+
+    public static final int FLAG_RESET = 1;
+
+    private static final int MAX_IDS = 1 << 16;
+    private static final double QUANTUM = 1000000;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private byte[] buffer = new byte[256];
+    private int position;
+
+    /**
+     * Encode a user-positions event.
+     *
+     * @param positions The positions to send.
+     * @return The binary frame.
+     */
+    public byte[] encode(Collection<PointOfInterest> positions) {
+        writeHeader(USER_POSITIONS, positions.size());
+
+        long lastTimestamp = 0;
+        long lastLat = 0;
+        long lastLng = 0;
+        for (PointOfInterest pos : positions) {
+            boolean cluster = pos instanceof PointOfInterest.Cluster;
+            writeId(pos.getId(), cluster ? 1 : 0);
+
+            writeZigZag(pos.getTimestamp() - lastTimestamp);
+            lastTimestamp = pos.getTimestamp();
+
+            LatLng latLng = pos.getPosition();
+            long lat = Math.round(latLng.getLat() * QUANTUM);
+            long lng = Math.round(latLng.getLng() * QUANTUM);
+            writeZigZag(lat - lastLat);
+            writeZigZag(lng - lastLng);
+            lastLat = lat;
+            lastLng = lng;
+
+            if (cluster) {
+                writeVarLong(((PointOfInterest.Cluster) pos).getCount());
+            }
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Encode a remove-positions event.
+     *
+     * @param removed The ids of the positions the client should remove.
+     * @return The binary frame.
+     */
+    public byte[] encodeRemoved(Collection<String> removed) {
+        writeHeader(REMOVE_POSITIONS, removed.size());
+        for (String id : removed) {
+            writeId(id, 0);
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void writeHeader(int event, int size) {
+        position = 0;
+        writeByte(event);
+        if (ids.size() + size > MAX_IDS) {
+            ids.clear();
+            writeByte(FLAG_RESET);
+        } else {
+            writeByte(0);
+        }
+        writeVarLong(size);
+    }
+
+    private void writeId(String id, int flag) {
+        Integer ref = ids.get(id);
+        if (ref != null) {
+            writeVarLong(((long) ref << 1) | flag);
+        } else {
+            ref = ids.size();
+            ids.put(id, ref);
+            writeVarLong(((long) ref << 1) | flag);
+            writeString(id);
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (position + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7fL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeZigZag(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+}
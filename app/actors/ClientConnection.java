@@ -1,19 +1,26 @@
 package actors;
 
 import akka.actor.*;
+import backend.Metrics;
+import backend.StageMetrics;
 import actors.PositionSubscriberProtocol.PositionSubscriberUpdate;
-import com.fasterxml.jackson.databind.JsonNode;
+import actors.PositionSubscriberProtocol.UpdateAcked;
 import models.backend.*;
 import actors.ClientConnectionProtocol.*;
-import org.geojson.Feature;
-import org.geojson.FeatureCollection;
-import org.geojson.Point;
 import play.libs.Json;
 
-import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 /**
  * Represents a client connection
+ *
+ * Clients connected through the binary WebSocket get their position updates in the binary format of
+ * {@link BinaryPositionsEncoder}, and send their events as UTF-8 encoded JSON in binary frames.
+ *
+ * Clients acknowledge each frame of positions they handle, and once all the frames of an update are acknowledged,
+ * the position subscriber is told, so that it can pace its updates to the client.
  */
 public class ClientConnection extends UntypedActor {
 
@@ -23,25 +30,52 @@ public class ClientConnection extends UntypedActor {
      * @param regionManagerClient The region manager client to send updates to
      */
     public static Props props(String email, ActorRef upstream, ActorRef regionManagerClient) {
-        return Props.create(ClientConnection.class, () -> new ClientConnection(email, upstream, regionManagerClient));
+        return props(email, upstream, regionManagerClient, false);
+    }
+
+    /**
+     * @param email               The email address of the client
+     * @param upstream            The upstream actor to send to
+     * @param regionManagerClient The region manager client to send updates to
+     * @param binary              Whether the client is connected through the binary WebSocket
+     */
+    public static Props props(String email, ActorRef upstream, ActorRef regionManagerClient, boolean binary) {
+        return Props.create(ClientConnection.class, () -> new ClientConnection(email, upstream, regionManagerClient,
+                binary));
     }
 
     private final String email;
     private final ActorRef upstream;
     private final ActorRef regionManagerClient;
     private final ActorRef subscriber;
+    private final StageMetrics metrics = Metrics.MetricsProvider.get(getContext().system()).Client;
+
+    private final UserPositionsEncoder encoder;
+    private final BinaryPositionsEncoder binaryEncoder;
+
+    /**
+     * The number of unacknowledged frames of each update sent, oldest first.
+     *
+     * Only the most recent updates are tracked, so that clients that never acknowledge don't grow it without bound.
+     */
+    private final Deque<Integer> unackedFrames = new ArrayDeque<>();
+    private static final int MAX_UNACKED_UPDATES = 64;
 
-    private ClientConnection(String email, ActorRef upstream, ActorRef regionManagerClient) {
+    private ClientConnection(String email, ActorRef upstream, ActorRef regionManagerClient, boolean binary) {
         this.email = email;
         this.upstream = upstream;
         this.regionManagerClient = regionManagerClient;
+        this.encoder = binary ? null :
+                new UserPositionsEncoder(RegionTopics.RegionTopicsProvider.get(getContext().system()).Features);
+        this.binaryEncoder = binary ? new BinaryPositionsEncoder() : null;
 
         this.subscriber = getContext().actorOf(PositionSubscriber.props(self()), "positionSubscriber");
     }
 
     public void onReceive(Object msg) throws Exception {
-        if (msg instanceof JsonNode) {
-            ClientEvent event = Json.fromJson((JsonNode) msg, ClientEvent.class);
+        if (msg instanceof String || msg instanceof byte[]) {
+            String text = msg instanceof String ? (String) msg : new String((byte[]) msg, StandardCharsets.UTF_8);
+            ClientEvent event = Json.fromJson(Json.parse(text), ClientEvent.class);
 
             if (event instanceof UserMoved) {
                 UserMoved userMoved = (UserMoved) event;
@@ -50,32 +84,46 @@ public class ClientConnection extends UntypedActor {
             } else if (event instanceof ViewingArea) {
                 ViewingArea viewingArea = (ViewingArea) event;
                 subscriber.tell(BoundingBox.fromBbox(viewingArea.getArea().getBbox()), self());
+            } else if (event instanceof Ack) {
+                Integer frames = unackedFrames.poll();
+                if (frames != null && frames > 1) {
+                    unackedFrames.addFirst(frames - 1);
+                } else if (frames != null) {
+                    subscriber.tell(new UpdateAcked(), self());
+                }
             }
 
         } else if (msg instanceof PositionSubscriberUpdate) {
 
             PositionSubscriberUpdate update = (PositionSubscriberUpdate) msg;
-            FeatureCollection collection = new FeatureCollection();
-
-            collection.setFeatures(update.getUpdates().stream().map(pos -> {
-                Feature feature = new Feature();
-                Point point = new Point();
-
-                point.setCoordinates(pos.getPosition().toLngLatAlt());
-                feature.setGeometry(point);
-
-                feature.setId(pos.getId());
-                feature.setProperty("timestamp", pos.getTimestamp());
-                if (pos instanceof PointOfInterest.Cluster) {
-                    feature.setProperty("count", ((PointOfInterest.Cluster) pos).getCount());
+            int frames = 0;
+
+            if (!update.getUpdates().isEmpty()) {
+                for (PointOfInterest pos : update.getUpdates()) {
+                    // clusters summarise many moves, only the latency of single users is meaningful
+                    if (pos instanceof PointOfInterest.UserPosition) {
+                        metrics.record(pos.getTimestamp());
+                    }
                 }
-
-                return feature;
-            }).collect(Collectors.toList()));
-
-            update.getArea().ifPresent(bbox -> collection.setBbox(bbox.toBbox()));
-
-            upstream.tell(Json.toJson(new UserPositions(collection)), self());
+                frames++;
+                if (binaryEncoder != null) {
+                    upstream.tell(binaryEncoder.encode(update.getUpdates()), self());
+                } else {
+                    upstream.tell(encoder.encode(update.getUpdates(), update.getArea()), self());
+                }
+            }
+            if (!update.getRemoved().isEmpty()) {
+                frames++;
+                if (binaryEncoder != null) {
+                    upstream.tell(binaryEncoder.encodeRemoved(update.getRemoved()), self());
+                } else {
+                    upstream.tell(encoder.encodeRemoved(update.getRemoved()), self());
+                }
+            }
+            unackedFrames.add(frames);
+            if (unackedFrames.size() > MAX_UNACKED_UPDATES) {
+                unackedFrames.poll();
+            }
         }
     }
 }
@@ -8,6 +8,8 @@ import org.geojson.FeatureCollection;
 import org.geojson.Point;
 import org.geojson.Polygon;
 
+import java.util.List;
+
 public abstract class ClientConnectionProtocol {
 
     /**
@@ -16,8 +18,10 @@ public abstract class ClientConnectionProtocol {
     @JsonTypeInfo(include = JsonTypeInfo.As.PROPERTY, use = JsonTypeInfo.Id.NAME, property = "event")
     @JsonSubTypes({
             @JsonSubTypes.Type(value = UserPositions.class, name = "user-positions"),
+            @JsonSubTypes.Type(value = RemovePositions.class, name = "remove-positions"),
             @JsonSubTypes.Type(value = ViewingArea.class, name = "viewing-area"),
             @JsonSubTypes.Type(value = UserMoved.class, name = "user-moved"),
+            @JsonSubTypes.Type(value = Ack.class, name = "ack"),
     })
     public static abstract class ClientEvent {
 
@@ -42,6 +46,22 @@ public abstract class ClientConnectionProtocol {
         }
     }
 
+    /**
+     * Event sent to the client when one or more users or clusters are no longer in the current area
+     */
+    public static class RemovePositions extends ClientEvent {
+        private final List<String> ids;
+
+        @JsonCreator
+        public RemovePositions(@JsonProperty("ids") List<String> ids) {
+            this.ids = ids;
+        }
+
+        public List<String> getIds() {
+            return ids;
+        }
+    }
+
     /**
      * Event sent from the client when the viewing area has changed
      */
@@ -74,5 +94,12 @@ public abstract class ClientConnectionProtocol {
         }
     }
 
-
+    /**
+     * Event sent from the client when it has handled a user-positions or remove-positions event
+     */
+    public static class Ack extends ClientEvent {
+        @JsonCreator
+        public Ack() {
+        }
+    }
 }
@@ -1,34 +1,34 @@
 package actors;
 
 import akka.actor.*;
+import backend.BotTrails.Trail;
+import backend.Ticks;
 import models.backend.*;
 import models.backend.PointOfInterest.UserPosition;
-import org.geojson.LineString;
-import org.geojson.LngLatAlt;
 import scala.concurrent.duration.Duration;
 
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
- * A bot that walks back and forth along a GeoJSON LineString.
+ * A bot that walks back and forth along a trail.
  */
 public class GeoJsonBot extends UntypedActor {
 
-    public static Props props(LineString trail, double offsetLat, double offsetLng, String userId, ActorRef regionManagerClient) {
+    public static Props props(Trail trail, double offsetLat, double offsetLng, String userId, ActorRef regionManagerClient) {
         return Props.create(GeoJsonBot.class, () -> new GeoJsonBot(trail, offsetLat, offsetLng, userId, regionManagerClient));
     }
 
     private static final Object STEP = new Object();
 
-    private final LineString trail;
+    private final Trail trail;
     private final double offsetLat;
     private final double offsetLng;
     private final String userId;
     private final ActorRef regionManagerClient;
     private final ActorRef positionSubscriber;
 
-    public GeoJsonBot(LineString trail, double offsetLat, double offsetLng, String userId, ActorRef regionManagerClient) {
+    public GeoJsonBot(Trail trail, double offsetLat, double offsetLng, String userId, ActorRef regionManagerClient) {
         this.trail = trail;
         this.offsetLat = offsetLat;
         this.offsetLng = offsetLng;
@@ -42,9 +42,8 @@ public class GeoJsonBot extends UntypedActor {
     private int direction = -1;
     private int stepCount = 0;
 
-    private final Cancellable stepTask = getContext().system().scheduler().schedule(
-            Duration.apply(1, TimeUnit.SECONDS), Duration.apply(1, TimeUnit.SECONDS), self(), STEP,
-            getContext().dispatcher(), self());
+    private final Cancellable stepTask = Ticks.TicksProvider.get(getContext().system())
+            .schedule(Duration.apply(1, TimeUnit.SECONDS), self(), STEP);
 
     public void postStop() throws Exception {
         stepTask.cancel();
@@ -52,22 +51,22 @@ public class GeoJsonBot extends UntypedActor {
 
     public void onReceive(Object msg) throws Exception {
         if (msg == STEP) {
-            if (pos == trail.getCoordinates().size() - 1 || pos == 0) {
+            if (pos == trail.size() - 1 || pos == 0) {
                 direction = -direction;
             }
             pos += direction;
 
-            LngLatAlt c = trail.getCoordinates().get(pos);
-            UserPosition userPos = new UserPosition(userId, System.currentTimeMillis(),
-                    new LatLng(c.getLatitude() + offsetLat, c.getLongitude() + offsetLng));
+            double lat = trail.getLat(pos) + offsetLat;
+            double lng = trail.getLng(pos) + offsetLng;
+            UserPosition userPos = new UserPosition(userId, System.currentTimeMillis(), new LatLng(lat, lng));
             regionManagerClient.tell(userPos, self());
 
             stepCount++;
             if (stepCount % 30 == 0) {
                 double w = ThreadLocalRandom.current().nextDouble() * 10.0;
                 double h = ThreadLocalRandom.current().nextDouble() * 20.0;
-                LatLng southWest = new LatLng(c.getLatitude() + offsetLat - w / 2, c.getLongitude() + offsetLng - h / 2);
-                LatLng northEast = new LatLng(c.getLatitude() + offsetLat + w / 2, c.getLongitude() + offsetLng + h / 2);
+                LatLng southWest = new LatLng(lat - w / 2, lng - h / 2);
+                LatLng northEast = new LatLng(lat + w / 2, lng + h / 2);
                 positionSubscriber.tell(new BoundingBox(southWest, northEast), self());
             }
         }
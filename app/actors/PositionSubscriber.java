@@ -1,31 +1,37 @@
 package actors;
 
 import akka.actor.*;
-import akka.contrib.pattern.DistributedPubSubExtension;
 import akka.contrib.pattern.DistributedPubSubMediator.Subscribe;
 import akka.contrib.pattern.DistributedPubSubMediator.Unsubscribe;
+import backend.CoalescingMailbox;
+import backend.Metrics;
 import backend.SettingsImpl;
+import backend.StageMetrics;
+import backend.Ticks;
+import backend.TicksImpl;
 import com.google.common.collect.ImmutableSet;
 import models.backend.*;
 import models.backend.PointOfInterest.UserPosition;
 import backend.Settings;
 import actors.PositionSubscriberProtocol.*;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import scala.concurrent.duration.FiniteDuration;
+
 import java.util.Set;
 
 public class PositionSubscriber extends UntypedActor {
 
     public static Props props(ActorRef subscriber) {
-        return Props.create(PositionSubscriber.class, () -> new PositionSubscriber(subscriber));
+        return Props.create(PositionSubscriber.class, () -> new PositionSubscriber(subscriber))
+                .withDispatcher(CoalescingMailbox.DISPATCHER);
     }
 
     private final ActorRef subscriber;
 
-    private final ActorRef mediator = DistributedPubSubExtension.get(getContext().system()).mediator();
+    private final ActorRef topicHub = RegionTopics.RegionTopicsProvider.get(getContext().system()).Hub;
     private final SettingsImpl settings = Settings.SettingsProvider.get(getContext().system());
+    private final StageMetrics metrics = Metrics.MetricsProvider.get(getContext().system()).Subscriber;
+    private final TicksImpl ticks = Ticks.TicksProvider.get(getContext().system());
 
     public PositionSubscriber(ActorRef subscriber) {
         this.subscriber = subscriber;
@@ -37,19 +43,38 @@ public class PositionSubscriber extends UntypedActor {
     private Set<RegionId> regions = ImmutableSet.of();
 
     /**
-     * The current bounding box subscribed to
+     * The known positions, the current bounding box subscribed to, and what the subscriber was last sent
+     */
+    private final SubscriberPoints points = new SubscriberPoints(settings.GeoFunctions, settings.SubscriberPointBudget);
+
+    /**
+     * Whether the client acknowledges its updates, which it's taken to do once the first acknowledgement arrives.
+     * Only then are updates held back, and the batch interval adapted.
+     */
+    private boolean acking = false;
+
+    /**
+     * The number of updates sent that haven't been acknowledged yet.
+     */
+    private int inFlight = 0;
+
+    /**
+     * The current batch interval.
      */
-    private Optional<BoundingBox> currentArea = Optional.empty();
+    private FiniteDuration batchInterval = settings.SubscriberBatchInterval;
 
     /**
-     * The unpublished position updates
+     * Whether changes were held back on the last tick, because the client was falling behind.
      */
-    private final Map<String, PointOfInterest> updates = new HashMap<>();
+    private boolean heldBack = false;
 
     private static Object TICK = new Object();
 
-    private final Cancellable tickTask = getContext().system().scheduler().schedule(settings.SubscriberBatchInterval,
-            settings.SubscriberBatchInterval, self(), TICK, getContext().dispatcher(), self());
+    private Cancellable tickTask = scheduleTick();
+
+    private Cancellable scheduleTick() {
+        return ticks.schedule(batchInterval, self(), TICK);
+    }
 
     public void postStop() throws Exception {
         tickTask.cancel();
@@ -64,34 +89,86 @@ public class PositionSubscriber extends UntypedActor {
 
             // Subscribe to any regions that we're not already subscribed to
             newRegions.stream().filter(r -> !regions.contains(r)).forEach(region ->
-                    mediator.tell(new Subscribe(region.getName(), self()), self())
+                    topicHub.tell(new Subscribe(region.getName(), self()), self())
             );
 
             // Unsubscribe from any regions that we no longer should be subscribed to
             regions.stream().filter(r -> !newRegions.contains(r)).forEach(region ->
-                    mediator.tell(new Unsubscribe(region.getName(), self()), self())
+                    topicHub.tell(new Unsubscribe(region.getName(), self()), self())
             );
 
             regions = newRegions;
-            currentArea = Optional.of(bbox);
+            points.view(bbox, regions);
 
         } else if (msg instanceof UserPosition) {
             UserPosition pos = (UserPosition) msg;
-            updates.put(pos.getId(), pos);
+            metrics.record(pos.getTimestamp());
+            // Ignore publications of regions we've just unsubscribed from.  Split regions publish to the topic of the
+            // region at the max zoom depth.
+            RegionId region = settings.GeoFunctions.regionForPoint(pos.getPosition(), settings.MaxZoomDepth);
+            if (regions.contains(region)) {
+                points.update(region, pos, System.nanoTime());
+            }
+
+        } else if (msg instanceof RegionPositions) {
+            RegionPositions positions = (RegionPositions) msg;
+            if (regions.contains(positions.getRegionId())) {
+                long now = System.nanoTime();
+                for (UserPosition pos : positions.getPositions()) {
+                    metrics.record(pos.getTimestamp());
+                    points.update(positions.getRegionId(), pos, now);
+                }
+            }
 
         } else if (msg instanceof RegionPoints) {
-            RegionPoints points = (RegionPoints) msg;
-            points.getPoints().stream().forEach(point ->
-                    updates.put(point.getId(), point)
-            );
+            RegionPoints regionPoints = (RegionPoints) msg;
+            if (regions.contains(regionPoints.getRegionId())) {
+                points.replace(regionPoints.getRegionId(), regionPoints.getPoints(), System.nanoTime());
+            }
+
+        } else if (msg instanceof UpdateAcked) {
+            acking = true;
+            inFlight = Math.max(inFlight - 1, 0);
+            if (heldBack && inFlight < settings.SubscriberMaxInFlight) {
+                // The client has caught up.  Send what was held back now rather than waiting out the stretched
+                // interval, and go back to the configured interval, which adapts from there.
+                heldBack = false;
+                sendDelta();
+                rescheduleTick(batchInterval.min(settings.SubscriberBatchInterval));
+            }
 
         } else if (msg == TICK) {
-            if (!updates.isEmpty()) {
-                subscriber.tell(new PositionSubscriberUpdate(currentArea, updates.values()), self());
-                updates.clear();
+            points.expire(System.nanoTime() - settings.ExpiryInterval.toNanos());
+            if (acking && inFlight >= settings.SubscriberMaxInFlight) {
+                // The client is falling behind.  Hold back, the changes are coalesced in the points until it catches
+                // up, and batch less often.
+                heldBack = true;
+                rescheduleTick(batchInterval.$times(2).min(settings.SubscriberMaxBatchInterval));
+            } else {
+                heldBack = false;
+                if (acking && inFlight == 0) {
+                    // The client has kept up with everything, so batch more often
+                    rescheduleTick(batchInterval.$div(2).max(settings.SubscriberMinBatchInterval));
+                }
+                sendDelta();
             }
         }
 
     }
 
+    private void sendDelta() {
+        points.delta().ifPresent(update -> {
+            subscriber.tell(update, self());
+            inFlight++;
+        });
+    }
+
+    private void rescheduleTick(FiniteDuration interval) {
+        if (!interval.equals(batchInterval)) {
+            batchInterval = interval;
+            tickTask.cancel();
+            tickTask = scheduleTick();
+        }
+    }
+
 }
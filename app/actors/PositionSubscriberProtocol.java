@@ -11,14 +11,20 @@ public abstract class PositionSubscriberProtocol {
 
     /**
      * An update of positions for a position subscriber.
+     *
+     * Holds only the positions that are new or have changed since the last update, and the ids of the positions
+     * that have gone since the last update.
      */
     public static class PositionSubscriberUpdate {
         private final Optional<BoundingBox> area;
         private final Collection<PointOfInterest> updates;
+        private final Collection<String> removed;
 
-        public PositionSubscriberUpdate(Optional<BoundingBox> area, Collection<PointOfInterest> updates) {
+        public PositionSubscriberUpdate(Optional<BoundingBox> area, Collection<PointOfInterest> updates,
+                                        Collection<String> removed) {
             this.area = area;
             this.updates = ImmutableList.copyOf(updates);
+            this.removed = ImmutableList.copyOf(removed);
         }
 
         public Optional<BoundingBox> getArea() {
@@ -28,5 +34,15 @@ public abstract class PositionSubscriberProtocol {
         public Collection<PointOfInterest> getUpdates() {
             return updates;
         }
+
+        public Collection<String> getRemoved() {
+            return removed;
+        }
+    }
+
+    /**
+     * Sent to a position subscriber when its client has acknowledged an update.
+     */
+    public static class UpdateAcked {
     }
 }
@@ -3,28 +3,142 @@ package actors;
 import akka.actor.*;
 import backend.*;
 import backend.RegionManagerProtocol.UpdateUserPosition;
+import backend.RegionManagerProtocol.UpdateUserPositions;
+import akka.routing.ConsistentHashingRoutingLogic;
 import akka.routing.FromConfig;
+import akka.routing.GetRoutees;
+import akka.routing.Routee;
+import akka.routing.Routees;
 import models.backend.PointOfInterest.UserPosition;
 import models.backend.RegionId;
+import scala.collection.immutable.IndexedSeq;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A client for the region manager, handles routing of position updates to the
  * regionManager on the right backend node.
+ *
+ * When position batching is enabled, updates are held back for up to the batch interval, and then sent as one
+ * UpdateUserPositions message per backend node.  The updates are grouped using the same consistent hashing as the
+ * router, over the routees last reported by the router.
+ *
+ * Position updates can also be sent in bulk, as UpdateUserPositions with their regions already worked out, as the
+ * simulated bots do.
+ *
+ * When regions are cluster sharded, updates go to the shard region of this node instead, without batching.
  */
 public class RegionManagerClient extends UntypedActor {
   public static Props props() {
       return Props.create(RegionManagerClient.class, RegionManagerClient::new);
   }
 
+    private static final Object FLUSH = new Object();
+
     private final ActorRef regionManagerRouter =
             getContext().actorOf(Props.empty().withRouter(FromConfig.getInstance()), "router");
     private final SettingsImpl settings = Settings.SettingsProvider.get(getContext().system());
 
+    /**
+     * The sharding of regions, if regions are sharded.
+     */
+    private final RegionShardingImpl sharding = settings.ShardingEnabled ?
+            RegionSharding.RegionShardingProvider.get(getContext().system()) : null;
+
+    private final boolean batching = settings.PositionBatchEnabled && sharding == null;
+
+    private final ConsistentHashingRoutingLogic routingLogic =
+            new ConsistentHashingRoutingLogic(getContext().system());
+
+    /**
+     * The routees of the router, as last reported by it, or null if they're not known yet.
+     */
+    private IndexedSeq<Routee> routees = null;
+
+    private final List<UpdateUserPosition> pending = new ArrayList<>();
+
+    private final Cancellable flushTask = batching ?
+            getContext().system().scheduler().schedule(settings.PositionBatchInterval, settings.PositionBatchInterval,
+                    self(), FLUSH, getContext().dispatcher(), self()) : null;
+
+    public void preStart() throws Exception {
+        if (batching) {
+            regionManagerRouter.tell(GetRoutees.getInstance(), self());
+        }
+    }
+
+    public void postStop() throws Exception {
+        if (flushTask != null) {
+            flushTask.cancel();
+        }
+    }
+
     public void onReceive(Object msg) throws Exception {
         if (msg instanceof UserPosition) {
             UserPosition pos = (UserPosition) msg;
             RegionId regionId = settings.GeoFunctions.regionForPoint(pos.getPosition());
-            regionManagerRouter.tell(new UpdateUserPosition(regionId, pos), self());
+            UpdateUserPosition update = new UpdateUserPosition(regionId, pos);
+            if (sharding != null) {
+                sharding.tell(update, self());
+            } else if (batching) {
+                pending.add(update);
+                if (pending.size() >= settings.PositionBatchMaxSize) {
+                    flush();
+                }
+            } else {
+                regionManagerRouter.tell(update, self());
+            }
+
+        } else if (msg instanceof UpdateUserPositions) {
+            List<UpdateUserPosition> updates = ((UpdateUserPositions) msg).getUpdates();
+            if (sharding != null) {
+                for (UpdateUserPosition update : updates) {
+                    sharding.tell(update, self());
+                }
+            } else if (batching) {
+                pending.addAll(updates);
+                if (pending.size() >= settings.PositionBatchMaxSize) {
+                    flush();
+                }
+            } else {
+                for (UpdateUserPosition update : updates) {
+                    regionManagerRouter.tell(update, self());
+                }
+            }
+
+        } else if (msg == FLUSH) {
+            flush();
+            // Backend nodes come and go, so keep the routees up to date
+            regionManagerRouter.tell(GetRoutees.getInstance(), self());
+
+        } else if (msg instanceof Routees) {
+            IndexedSeq<Routee> routees = ((Routees) msg).routees();
+            this.routees = routees.isEmpty() ? null : routees;
+        }
+    }
+
+    /**
+     * Send the pending updates, one batch per routee.
+     */
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (routees == null) {
+            // No routees known yet, let the router route each update
+            for (UpdateUserPosition update : pending) {
+                regionManagerRouter.tell(update, self());
+            }
+        } else {
+            Map<Routee, List<UpdateUserPosition>> batches = new HashMap<>();
+            for (UpdateUserPosition update : pending) {
+                batches.computeIfAbsent(routingLogic.select(update, routees), r -> new ArrayList<>()).add(update);
+            }
+            batches.forEach((routee, updates) -> routee.send(new UpdateUserPositions(updates), self()));
         }
+        pending.clear();
     }
-}
\ No newline at end of file
+}
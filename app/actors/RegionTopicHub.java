@@ -0,0 +1,198 @@
+package actors;
+
+import akka.actor.*;
+import akka.contrib.pattern.DistributedPubSubExtension;
+import akka.contrib.pattern.DistributedPubSubMediator.Subscribe;
+import akka.contrib.pattern.DistributedPubSubMediator.SubscribeAck;
+import akka.contrib.pattern.DistributedPubSubMediator.Unsubscribe;
+import akka.contrib.pattern.DistributedPubSubMediator.UnsubscribeAck;
+import actors.SharedFeatures.Feature;
+import backend.ExpiryBuckets;
+import backend.Settings;
+import backend.SettingsImpl;
+import backend.Ticks;
+import models.backend.PointOfInterest;
+import models.backend.PointOfInterest.UserPosition;
+import models.backend.RegionPoints;
+import models.backend.RegionPositions;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Multiplexes the region topic subscriptions of this node onto the distributed pub/sub mediator.
+ *
+ * Takes the same Subscribe and Unsubscribe messages as the mediator, but holds only one mediator subscription per
+ * topic for the whole node, however many subscribers on this node are interested in it.  Each topic with local
+ * subscribers has a child actor, which is what's subscribed to the mediator, and which fans the published messages
+ * out to the local subscribers.  The subscribers are counted and watched, and when the last one goes away, the topic
+ * actor is stopped, unsubscribing from the mediator.
+ *
+ * The topic actors also encode the JSON features of the points published to them, once for the whole node, so that
+ * the connections of all the local subscribers can share them.
+ */
+public class RegionTopicHub extends UntypedActor {
+
+    public static Props props(SharedFeatures features) {
+        return Props.create(RegionTopicHub.class, () -> new RegionTopicHub(features));
+    }
+
+    private final SharedFeatures features;
+
+    private RegionTopicHub(SharedFeatures features) {
+        this.features = features;
+    }
+
+    /**
+     * The topic actor of each topic with local subscribers.
+     */
+    private final Map<String, ActorRef> topics = new HashMap<>();
+
+    /**
+     * The local subscribers of each topic.
+     */
+    private final Map<String, Set<ActorRef>> subscribers = new HashMap<>();
+
+    /**
+     * The topics that each local subscriber is subscribed to.
+     */
+    private final Map<ActorRef, Set<String>> subscriptions = new HashMap<>();
+
+    public void onReceive(Object msg) throws Exception {
+        if (msg instanceof Subscribe) {
+            Subscribe subscribe = (Subscribe) msg;
+            subscribe(subscribe.topic(), subscribe.ref());
+
+        } else if (msg instanceof Unsubscribe) {
+            Unsubscribe unsubscribe = (Unsubscribe) msg;
+            unsubscribe(unsubscribe.topic(), unsubscribe.ref());
+
+        } else if (msg instanceof Terminated) {
+            ActorRef ref = ((Terminated) msg).actor();
+            Set<String> topics = subscriptions.get(ref);
+            if (topics != null) {
+                for (String topic : topics.toArray(new String[topics.size()])) {
+                    unsubscribe(topic, ref);
+                }
+            }
+        }
+    }
+
+    private void subscribe(String topic, ActorRef ref) {
+        Set<ActorRef> refs = subscribers.computeIfAbsent(topic, t -> new HashSet<>());
+        if (refs.add(ref)) {
+            ActorRef topicActor = topics.computeIfAbsent(topic, t -> getContext().actorOf(Topic.props(t, features)));
+            topicActor.tell(new Subscribe(topic, ref), self());
+
+            subscriptions.computeIfAbsent(ref, r -> {
+                getContext().watch(r);
+                return new HashSet<>();
+            }).add(topic);
+        }
+    }
+
+    private void unsubscribe(String topic, ActorRef ref) {
+        Set<ActorRef> refs = subscribers.get(topic);
+        if (refs != null && refs.remove(ref)) {
+            if (refs.isEmpty()) {
+                // the last local subscriber has gone, so the node no longer needs the topic
+                subscribers.remove(topic);
+                getContext().stop(topics.remove(topic));
+            } else {
+                topics.get(topic).tell(new Unsubscribe(topic, ref), self());
+            }
+
+            Set<String> refTopics = subscriptions.get(ref);
+            refTopics.remove(topic);
+            if (refTopics.isEmpty()) {
+                subscriptions.remove(ref);
+                getContext().unwatch(ref);
+            }
+        }
+    }
+
+    /**
+     * The mediator subscription of a single topic, fanning the messages published to it out to the local subscribers.
+     *
+     * The points published are encoded before they're fanned out, and their features are shared until the points
+     * have been superseded, or haven't been published again for the expiry interval.
+     */
+    public static class Topic extends UntypedActor {
+
+        public static Props props(String topic, SharedFeatures features) {
+            return Props.create(Topic.class, () -> new Topic(topic, features));
+        }
+
+        private static final Object TICK = new Object();
+
+        private final String topic;
+        private final SharedFeatures features;
+        private final ActorRef mediator = DistributedPubSubExtension.get(getContext().system()).mediator();
+        private final SettingsImpl settings = Settings.SettingsProvider.get(getContext().system());
+        private final Set<ActorRef> subscribers = new HashSet<>();
+
+        private final UserPositionsEncoder encoder = new UserPositionsEncoder();
+
+        /**
+         * The features this topic has shared, by point id, and when they expire.
+         */
+        private final Map<String, Feature> shared = new HashMap<>();
+        private final ExpiryBuckets<String> expiries = new ExpiryBuckets<>(settings.SummaryInterval);
+
+        private final Cancellable tickTask = Ticks.TicksProvider.get(getContext().system())
+                .schedule(settings.SummaryInterval, self(), TICK);
+
+        private Topic(String topic, SharedFeatures features) {
+            this.topic = topic;
+            this.features = features;
+        }
+
+        public void preStart() throws Exception {
+            mediator.tell(new Subscribe(topic, self()), self());
+        }
+
+        public void postStop() throws Exception {
+            tickTask.cancel();
+            mediator.tell(new Unsubscribe(topic, self()), self());
+            shared.values().forEach(features::remove);
+        }
+
+        public void onReceive(Object msg) throws Exception {
+            if (msg instanceof Subscribe) {
+                subscribers.add(((Subscribe) msg).ref());
+
+            } else if (msg instanceof Unsubscribe) {
+                subscribers.remove(((Unsubscribe) msg).ref());
+
+            } else if (msg == TICK) {
+                expiries.expire(System.nanoTime(), id -> features.remove(shared.remove(id)));
+
+            } else if (!(msg instanceof SubscribeAck) && !(msg instanceof UnsubscribeAck)) {
+                if (msg instanceof RegionPositions) {
+                    for (UserPosition pos : ((RegionPositions) msg).getPositions()) {
+                        share(pos);
+                    }
+                } else if (msg instanceof RegionPoints) {
+                    for (PointOfInterest point : ((RegionPoints) msg).getPoints()) {
+                        share(point);
+                    }
+                } else if (msg instanceof UserPosition) {
+                    share((UserPosition) msg);
+                }
+                for (ActorRef subscriber : subscribers) {
+                    subscriber.tell(msg, sender());
+                }
+            }
+        }
+
+        private void share(PointOfInterest point) throws IOException {
+            Feature feature = new Feature(point, encoder.encodeFeature(point));
+            shared.put(point.getId(), feature);
+            features.put(feature);
+            expiries.schedule(point.getId(), System.nanoTime() + settings.ExpiryInterval.toNanos());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package actors;
+
+import akka.actor.*;
+
+/**
+ * The node local region topic hub, that position subscribers subscribe to region topics through.
+ */
+public class RegionTopics extends AbstractExtensionId<RegionTopicsImpl>
+        implements ExtensionIdProvider {
+    public final static RegionTopics RegionTopicsProvider = new RegionTopics();
+
+    private RegionTopics() {}
+
+    public RegionTopics lookup() {
+        return RegionTopics.RegionTopicsProvider;
+    }
+
+    public RegionTopicsImpl createExtension(ExtendedActorSystem system) {
+        SharedFeatures features = new SharedFeatures();
+        return new RegionTopicsImpl(system.systemActorOf(RegionTopicHub.props(features), "regionTopicHub"), features);
+    }
+}
@@ -0,0 +1,22 @@
+package actors;
+
+import akka.actor.ActorRef;
+import akka.actor.Extension;
+
+public class RegionTopicsImpl implements Extension {
+
+    RegionTopicsImpl(ActorRef hub, SharedFeatures features) {
+        this.Hub = hub;
+        this.Features = features;
+    }
+
+  /**
+   * The region topic hub of this node, which takes the same Subscribe and Unsubscribe messages as the mediator.
+   */
+  public final ActorRef Hub;
+
+  /**
+   * The features of the points published to the region topics of this node, encoded once for all its connections.
+   */
+  public final SharedFeatures Features;
+}
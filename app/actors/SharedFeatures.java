@@ -0,0 +1,53 @@
+package actors;
+
+import models.backend.PointOfInterest;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The JSON features of the points published to the region topics of this node, encoded once for all the connections
+ * on the node.
+ *
+ * The topic actors of the region topic hub encode the points of each publication as it arrives, before fanning it out
+ * to the subscribers, and the connections look the features up as they encode their frames.  A feature is looked up
+ * by point id, but only used for the very point instance it was encoded from, so a connection sending a newer or
+ * older position of a user, or a cluster of its own viewport, encodes that point itself.
+ */
+public class SharedFeatures {
+
+    /**
+     * A point and its encoded feature.
+     */
+    static class Feature {
+        private final PointOfInterest point;
+        private final String json;
+
+        Feature(PointOfInterest point, String json) {
+            this.point = point;
+            this.json = json;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Feature> features = new ConcurrentHashMap<>();
+
+    /**
+     * Get the encoded feature of the given point, if a topic has encoded it.
+     *
+     * @return The JSON text of the feature, or null.
+     */
+    public String get(PointOfInterest point) {
+        Feature feature = features.get(point.getId());
+        return feature != null && feature.point == point ? feature.json : null;
+    }
+
+    void put(Feature feature) {
+        features.put(feature.point.getId(), feature);
+    }
+
+    /**
+     * Remove the given feature, unless it has been replaced by a feature of another point with the same id.
+     */
+    void remove(Feature feature) {
+        features.remove(feature.point.getId(), feature);
+    }
+}
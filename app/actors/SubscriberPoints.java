@@ -0,0 +1,233 @@
+package actors;
+
+import actors.PositionSubscriberProtocol.PositionSubscriberUpdate;
+import backend.GeoFunctions;
+import backend.PointClusterer;
+import models.backend.BoundingBox;
+import models.backend.PointOfInterest;
+import models.backend.RegionId;
+
+import java.util.*;
+
+/**
+ * The points that a position subscriber knows about, and what its client was last sent.
+ *
+ * The points are tracked by the region they came from, so that a region's points can be replaced when it publishes
+ * all of them, and so that the points of regions that are no longer subscribed to can be removed.  Deltas only hold
+ * the points that are new or have moved since they were last sent, and the ids of the points that the client has
+ * but that are no longer known.
+ *
+ * Regions are coarser than the viewport of the client, so only the known points that lie in its bounding box are
+ * sent.  If there are more of those than the point budget, they're clustered across the bounding box, so a client
+ * never has more markers than its budget, however dense the area it views.
+ */
+public class SubscriberPoints {
+
+    private static final String VIEWPORT_ID = "viewport";
+
+    private static class Entry {
+        private PointOfInterest point;
+        private RegionId region;
+        private long received;
+    }
+
+    private final Map<String, Entry> known = new HashMap<>();
+
+    /**
+     * The ids of the known points of each region.
+     */
+    private final Map<RegionId, Set<String>> regionIds = new HashMap<>();
+
+    /**
+     * The ids of the points of regions that are no longer subscribed to, kept until a subscribed region delivers
+     * points to replace them.
+     */
+    private final Set<String> stale = new HashSet<>();
+
+    /**
+     * The points the client was last sent, by id.
+     */
+    private Map<String, PointOfInterest> sent = new HashMap<>();
+
+    /**
+     * An empty map, swapped with sent on each delta, so that what was sent is never copied.
+     */
+    private Map<String, PointOfInterest> previous = new HashMap<>();
+
+    /**
+     * Whether the points or the viewport have changed since the last delta.
+     */
+    private boolean changed = false;
+
+    /**
+     * The bounding box of the viewport, if known.
+     */
+    private BoundingBox area;
+
+    private final GeoFunctions geoFunctions;
+    private final PointClusterer clusterer;
+
+    /**
+     * @param geoFunctions The geospatial functions.
+     * @param budget       The most points to send for the viewport.
+     */
+    public SubscriberPoints(GeoFunctions geoFunctions, int budget) {
+        this.geoFunctions = geoFunctions;
+        this.clusterer = geoFunctions.clusterer(budget, Math.max((int) Math.sqrt(budget), 1));
+    }
+
+    /**
+     * Update a single point.
+     *
+     * @param region The region the point came from.
+     * @param point  The point.
+     * @param now    The current System.nanoTime().
+     */
+    public void update(RegionId region, PointOfInterest point, long now) {
+        put(region, point, now);
+        dropStale();
+    }
+
+    /**
+     * Replace all the points of a region.
+     *
+     * @param region The region the points came from.
+     * @param points All the points of the region.
+     * @param now    The current System.nanoTime().
+     */
+    public void replace(RegionId region, Collection<PointOfInterest> points, long now) {
+        Set<String> ids = regionIds.get(region);
+        if (ids != null) {
+            Set<String> current = new HashSet<>();
+            points.forEach(point -> current.add(point.getId()));
+            for (String id : ids.toArray(new String[ids.size()])) {
+                if (!current.contains(id)) {
+                    remove(id);
+                }
+            }
+        }
+        for (PointOfInterest point : points) {
+            put(region, point, now);
+        }
+        dropStale();
+    }
+
+    /**
+     * Set the viewport, and mark the points of any region not in the given regions as stale.
+     *
+     * Stale points are still known until a subscribed region delivers points, so the client has something to show
+     * in the meantime.
+     *
+     * @param area    The bounding box of the viewport.
+     * @param regions The regions subscribed to for the viewport.
+     */
+    public void view(BoundingBox area, Set<RegionId> regions) {
+        this.area = area;
+        changed = true;
+        stale.clear();
+        regionIds.forEach((region, ids) -> {
+            if (!regions.contains(region)) {
+                stale.addAll(ids);
+            }
+        });
+    }
+
+    /**
+     * Remove all the points that haven't been updated since the given time.
+     *
+     * @param before A System.nanoTime().
+     */
+    public void expire(long before) {
+        List<String> expired = new ArrayList<>();
+        known.forEach((id, entry) -> {
+            if (entry.received - before < 0) {
+                expired.add(id);
+            }
+        });
+        expired.forEach(this::remove);
+    }
+
+    /**
+     * Get the changes to the viewport since the last delta, if there are any, and take them as sent.
+     */
+    public Optional<PositionSubscriberUpdate> delta() {
+        if (!changed) {
+            return Optional.empty();
+        }
+        changed = false;
+
+        List<PointOfInterest> visible = new ArrayList<>();
+        for (Entry entry : known.values()) {
+            if (area == null || geoFunctions.contains(area, entry.point.getPosition())) {
+                visible.add(entry.point);
+            }
+        }
+        if (area != null && clusterer.shouldCluster(visible.size())) {
+            visible = clusterer.cluster(VIEWPORT_ID, area, visible);
+        }
+
+        List<PointOfInterest> updated = new ArrayList<>();
+        Map<String, PointOfInterest> lastSent = sent;
+        // previous was emptied by the last delta
+        sent = previous;
+        previous = lastSent;
+        for (PointOfInterest point : visible) {
+            PointOfInterest last = lastSent.remove(point.getId());
+            if (last == null || !point.isSameAs(last)) {
+                updated.add(point);
+            }
+            sent.put(point.getId(), point);
+        }
+        List<String> removed = new ArrayList<>(lastSent.keySet());
+        lastSent.clear();
+
+        if (updated.isEmpty() && removed.isEmpty()) {
+            return Optional.empty();
+        } else {
+            return Optional.of(new PositionSubscriberUpdate(Optional.ofNullable(area), updated, removed));
+        }
+    }
+
+    private void put(RegionId region, PointOfInterest point, long now) {
+        String id = point.getId();
+        Entry entry = known.get(id);
+        if (entry == null) {
+            entry = new Entry();
+            known.put(id, entry);
+        }
+        if (!region.equals(entry.region)) {
+            if (entry.region != null) {
+                removeFromRegion(entry.region, id);
+            }
+            regionIds.computeIfAbsent(region, r -> new HashSet<>()).add(id);
+        }
+        entry.point = point;
+        entry.region = region;
+        entry.received = now;
+        stale.remove(id);
+        changed = true;
+    }
+
+    private void remove(String id) {
+        Entry entry = known.remove(id);
+        if (entry != null) {
+            removeFromRegion(entry.region, id);
+            changed = true;
+        }
+    }
+
+    private void removeFromRegion(RegionId region, String id) {
+        Set<String> ids = regionIds.get(region);
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            regionIds.remove(region);
+        }
+    }
+
+    private void dropStale() {
+        if (!stale.isEmpty()) {
+            stale.forEach(this::remove);
+            stale.clear();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package actors;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import models.backend.BoundingBox;
+import models.backend.LatLng;
+import models.backend.PointOfInterest;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Encodes user-positions events for the client, straight from the points of interest.
+ *
+ * The output is exactly what serialising a UserPositions event built from geojson features would produce, down to
+ * the order of the fields, but it's streamed through a JsonGenerator, so no features or JSON trees are built.  The
+ * encoder reuses its buffer, so each connection should use its own.
+ *
+ * Features already encoded by the region topics of the node are copied into the event as they are, so a point that
+ * many connections send is only encoded once.
+ */
+public class UserPositionsEncoder {
+
+    private final JsonFactory factory = new JsonFactory();
+    private final StringWriter buffer = new StringWriter();
+    private final SharedFeatures sharedFeatures;
+
+    public UserPositionsEncoder() {
+        this(new SharedFeatures());
+    }
+
+    /**
+     * @param sharedFeatures The features encoded by the region topics of the node.
+     */
+    public UserPositionsEncoder(SharedFeatures sharedFeatures) {
+        this.sharedFeatures = sharedFeatures;
+    }
+
+    /**
+     * Encode a user-positions event.
+     *
+     * @param positions The positions to send.
+     * @param area      The area the positions are for, if known.
+     * @return The JSON text of the event.
+     */
+    public String encode(Collection<PointOfInterest> positions, Optional<BoundingBox> area) throws IOException {
+        buffer.getBuffer().setLength(0);
+        try (JsonGenerator gen = factory.createGenerator(buffer)) {
+            gen.writeStartObject();
+            gen.writeStringField("event", "user-positions");
+            gen.writeObjectFieldStart("positions");
+            gen.writeStringField("type", "FeatureCollection");
+            if (area.isPresent()) {
+                BoundingBox bbox = area.get();
+                gen.writeArrayFieldStart("bbox");
+                gen.writeNumber(bbox.getSouthWest().getLng());
+                gen.writeNumber(bbox.getSouthWest().getLat());
+                gen.writeNumber(bbox.getNorthEast().getLng());
+                gen.writeNumber(bbox.getNorthEast().getLat());
+                gen.writeEndArray();
+            }
+            gen.writeArrayFieldStart("features");
+            for (PointOfInterest pos : positions) {
+                String feature = sharedFeatures.get(pos);
+                if (feature != null) {
+                    gen.writeRawValue(feature);
+                } else {
+                    writeFeature(gen, pos);
+                }
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Encode a remove-positions event.
+     *
+     * @param ids The ids of the positions the client should remove.
+     * @return The JSON text of the event.
+     */
+    public String encodeRemoved(Collection<String> ids) throws IOException {
+        buffer.getBuffer().setLength(0);
+        try (JsonGenerator gen = factory.createGenerator(buffer)) {
+            gen.writeStartObject();
+            gen.writeStringField("event", "remove-positions");
+            gen.writeArrayFieldStart("ids");
+            for (String id : ids) {
+                gen.writeString(id);
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Encode the feature of a single point.
+     *
+     * @return The JSON text of the feature.
+     */
+    public String encodeFeature(PointOfInterest pos) throws IOException {
+        buffer.getBuffer().setLength(0);
+        try (JsonGenerator gen = factory.createGenerator(buffer)) {
+            writeFeature(gen, pos);
+        }
+        return buffer.toString();
+    }
+
+    private void writeFeature(JsonGenerator gen, PointOfInterest pos) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("type", "Feature");
+        gen.writeObjectFieldStart("properties");
+        // The order that a HashMap of these two properties iterates in
+        if (pos instanceof PointOfInterest.Cluster) {
+            gen.writeNumberField("count", ((PointOfInterest.Cluster) pos).getCount());
+        }
+        gen.writeNumberField("timestamp", pos.getTimestamp());
+        gen.writeEndObject();
+        gen.writeObjectFieldStart("geometry");
+        gen.writeStringField("type", "Point");
+        gen.writeArrayFieldStart("coordinates");
+        LatLng position = pos.getPosition();
+        gen.writeNumber(position.getLng());
+        gen.writeNumber(position.getLat());
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.writeStringField("id", pos.getId());
+        gen.writeEndObject();
+    }
+}
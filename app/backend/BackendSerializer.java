@@ -0,0 +1,386 @@
+package backend;
+
+import akka.serialization.JSerializer;
+import backend.RegionManagerProtocol.*;
+import backend.RegionShardingProtocol.ShardLoadReport;
+import models.backend.*;
+import models.backend.PointOfInterest.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary serializer for the messages that travel between the nodes of the cluster.
+ *
+ * Region ids are written as their zoom level and x/y coordinates, coordinates as raw doubles, and numbers as
+ * variable length integers.  Point ids are split into a prefix, up to and including the last dash, and a suffix.
+ * The prefixes are written once per message, and referred to by index after that, since ids like cluster ids share
+ * their region name as a prefix.
+ *
+ * It is bound to the message types in application.conf.
+ */
+public class BackendSerializer extends JSerializer {
+
+    private static final byte UPDATE_USER_POSITION = 1;
+    private static final byte UPDATE_REGION_POINTS = 2;
+    private static final byte REGION_POINTS = 3;
+    private static final byte REGION_POINTS_DELTA = 4;
+    private static final byte USER_POSITION = 5;
+    private static final byte CLUSTER = 6;
+    private static final byte LAT_LNG = 7;
+    private static final byte REGION_ID = 8;
+    private static final byte UPDATE_USER_POSITIONS = 9;
+    private static final byte SHARD_LOAD_REPORT = 10;
+    private static final byte UPDATE_REGION_LOAD = 11;
+    private static final byte REGION_SPLIT = 12;
+    private static final byte REGION_POSITIONS = 13;
+    private static final byte REQUEST_SNAPSHOT = 14;
+
+    public int identifier() {
+        return 2301;
+    }
+
+    public boolean includeManifest() {
+        return false;
+    }
+
+    public byte[] toBinary(Object obj) {
+        Writer out = new Writer();
+        if (obj instanceof UpdateUserPosition) {
+            UpdateUserPosition update = (UpdateUserPosition) obj;
+            out.writeByte(UPDATE_USER_POSITION);
+            out.writeRegionId(update.getRegionId());
+            out.writePoint(update.getUserPosition());
+        } else if (obj instanceof UpdateUserPositions) {
+            List<UpdateUserPosition> updates = ((UpdateUserPositions) obj).getUpdates();
+            out.writeByte(UPDATE_USER_POSITIONS);
+            out.writeVarLong(updates.size());
+            for (UpdateUserPosition update : updates) {
+                out.writeRegionId(update.getRegionId());
+                out.writePoint(update.getUserPosition());
+            }
+        } else if (obj instanceof UpdateRegionPoints) {
+            UpdateRegionPoints update = (UpdateRegionPoints) obj;
+            out.writeByte(UPDATE_REGION_POINTS);
+            out.writeRegionId(update.getRegionId());
+            out.writeDelta(update.getRegionPointsDelta());
+        } else if (obj instanceof RegionPoints) {
+            RegionPoints points = (RegionPoints) obj;
+            out.writeByte(REGION_POINTS);
+            out.writeRegionId(points.getRegionId());
+            out.writePoints(points.getPoints());
+        } else if (obj instanceof RegionPositions) {
+            RegionPositions positions = (RegionPositions) obj;
+            out.writeByte(REGION_POSITIONS);
+            out.writeRegionId(positions.getRegionId());
+            out.writeVarLong(positions.getPositions().size());
+            positions.getPositions().forEach(out::writePoint);
+        } else if (obj instanceof RegionPointsDelta) {
+            out.writeByte(REGION_POINTS_DELTA);
+            out.writeDelta((RegionPointsDelta) obj);
+        } else if (obj instanceof PointOfInterest) {
+            out.writePoint((PointOfInterest) obj);
+        } else if (obj instanceof LatLng) {
+            out.writeByte(LAT_LNG);
+            out.writeLatLng((LatLng) obj);
+        } else if (obj instanceof RegionId) {
+            out.writeByte(REGION_ID);
+            out.writeRegionId((RegionId) obj);
+        } else if (obj instanceof UpdateRegionLoad) {
+            UpdateRegionLoad update = (UpdateRegionLoad) obj;
+            out.writeByte(UPDATE_REGION_LOAD);
+            out.writeRegionId(update.getRegionId());
+            out.writeRegionId(update.getRegionLoad().getRegionId());
+            out.writeVarLong(update.getRegionLoad().getLoad());
+        } else if (obj instanceof RegionSplit) {
+            RegionSplit split = (RegionSplit) obj;
+            out.writeByte(REGION_SPLIT);
+            out.writeRegionId(split.getRegionId());
+            out.writeByte(split.isSplit() ? 1 : 0);
+        } else if (obj instanceof RequestSnapshot) {
+            out.writeByte(REQUEST_SNAPSHOT);
+            out.writeRegionId(((RequestSnapshot) obj).getRegionId());
+        } else if (obj instanceof ShardLoadReport) {
+            ShardLoadReport report = (ShardLoadReport) obj;
+            out.writeByte(SHARD_LOAD_REPORT);
+            out.writeString(report.getNode());
+            out.writeVarLong(report.getLoads().size());
+            report.getLoads().forEach((shardId, load) -> {
+                out.writeString(shardId);
+                out.writeDouble(load);
+            });
+        } else {
+            throw new IllegalArgumentException("Can't serialize object of type " + obj.getClass());
+        }
+        return out.toByteArray();
+    }
+
+    public Object fromBinaryJava(byte[] bytes, Class<?> manifest) {
+        Reader in = new Reader(bytes);
+        byte type = in.readByte();
+        switch (type) {
+            case UPDATE_USER_POSITION:
+                return new UpdateUserPosition(in.readRegionId(), (UserPosition) in.readPoint(in.readByte()));
+            case UPDATE_USER_POSITIONS:
+                int size = in.readVarInt();
+                List<UpdateUserPosition> updates = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    updates.add(new UpdateUserPosition(in.readRegionId(), (UserPosition) in.readPoint(in.readByte())));
+                }
+                return new UpdateUserPositions(updates);
+            case UPDATE_REGION_POINTS:
+                return new UpdateRegionPoints(in.readRegionId(), in.readDelta());
+            case REGION_POINTS:
+                return new RegionPoints(in.readRegionId(), in.readPoints());
+            case REGION_POSITIONS:
+                RegionId regionId = in.readRegionId();
+                int count = in.readVarInt();
+                List<UserPosition> positions = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    positions.add((UserPosition) in.readPoint(in.readByte()));
+                }
+                return new RegionPositions(regionId, positions);
+            case REGION_POINTS_DELTA:
+                return in.readDelta();
+            case USER_POSITION:
+            case CLUSTER:
+                return in.readPoint(type);
+            case LAT_LNG:
+                return in.readLatLng();
+            case REGION_ID:
+                return in.readRegionId();
+            case UPDATE_REGION_LOAD:
+                return new UpdateRegionLoad(in.readRegionId(), new RegionLoad(in.readRegionId(), in.readVarInt()));
+            case REGION_SPLIT:
+                return new RegionSplit(in.readRegionId(), in.readByte() == 1);
+            case REQUEST_SNAPSHOT:
+                return new RequestSnapshot(in.readRegionId());
+            case SHARD_LOAD_REPORT:
+                String node = in.readString();
+                int shards = in.readVarInt();
+                Map<String, Double> loads = new HashMap<>();
+                for (int i = 0; i < shards; i++) {
+                    loads.put(in.readString(), in.readDouble());
+                }
+                return new ShardLoadReport(node, loads);
+            default:
+                throw new IllegalArgumentException("Unknown message type " + type);
+        }
+    }
+
+    private static class Writer {
+        private byte[] buffer = new byte[64];
+        private int position = 0;
+
+        /**
+         * The prefixes written so far, keyed by prefix, with their index.
+         */
+        private final Map<String, Integer> prefixes = new HashMap<>();
+
+        private void ensureCapacity(int bytes) {
+            if (position + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+            }
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) b;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7fL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeDouble(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            ensureCapacity(8);
+            for (int i = 0; i < 8; i++) {
+                buffer[position++] = (byte) (bits >>> (i * 8));
+            }
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeId(String id) {
+            int split = id.lastIndexOf('-') + 1;
+            String prefix = id.substring(0, split);
+            Integer index = prefixes.get(prefix);
+            if (index != null) {
+                writeVarLong(index);
+            } else {
+                // A new prefix is written inline, with the next free index
+                writeVarLong(prefixes.size());
+                writeString(prefix);
+                prefixes.put(prefix, prefixes.size());
+            }
+            writeString(id.substring(split));
+        }
+
+        void writeRegionId(RegionId regionId) {
+            writeByte(regionId.getZoomLevel());
+            writeZigZag(regionId.getX());
+            writeZigZag(regionId.getY());
+        }
+
+        void writeLatLng(LatLng latLng) {
+            writeDouble(latLng.getLat());
+            writeDouble(latLng.getLng());
+        }
+
+        void writePoint(PointOfInterest point) {
+            if (point instanceof Cluster) {
+                writeByte(CLUSTER);
+            } else {
+                writeByte(USER_POSITION);
+            }
+            writeId(point.getId());
+            writeZigZag(point.getTimestamp());
+            writeLatLng(point.getPosition());
+            if (point instanceof Cluster) {
+                writeVarLong(((Cluster) point).getCount());
+            }
+        }
+
+        void writePoints(Collection<PointOfInterest> points) {
+            writeVarLong(points.size());
+            points.forEach(this::writePoint);
+        }
+
+        void writeDelta(RegionPointsDelta delta) {
+            writeRegionId(delta.getRegionId());
+            writeVarLong(delta.getSequenceNr());
+            writeByte(delta.isSnapshot() ? 1 : 0);
+            writePoints(delta.getUpdated());
+            writeVarLong(delta.getRemoved().size());
+            delta.getRemoved().forEach(this::writeId);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buffer;
+        private int position = 0;
+
+        /**
+         * The prefixes read so far, by index.
+         */
+        private final List<String> prefixes = new ArrayList<>();
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits |= (long) (buffer[position++] & 0xff) << (i * 8);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() {
+            int length = readVarInt();
+            String s = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return s;
+        }
+
+        String readId() {
+            int index = readVarInt();
+            if (index == prefixes.size()) {
+                prefixes.add(readString());
+            }
+            return prefixes.get(index) + readString();
+        }
+
+        RegionId readRegionId() {
+            int zoomLevel = readByte();
+            int x = (int) readZigZag();
+            int y = (int) readZigZag();
+            return new RegionId(zoomLevel, x, y);
+        }
+
+        LatLng readLatLng() {
+            double lat = readDouble();
+            double lng = readDouble();
+            return new LatLng(lat, lng);
+        }
+
+        PointOfInterest readPoint(byte type) {
+            String id = readId();
+            long timestamp = readZigZag();
+            LatLng position = readLatLng();
+            if (type == CLUSTER) {
+                return new Cluster(id, timestamp, position, readVarInt());
+            } else {
+                return new UserPosition(id, timestamp, position);
+            }
+        }
+
+        List<PointOfInterest> readPoints() {
+            int size = readVarInt();
+            List<PointOfInterest> points = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                points.add(readPoint(readByte()));
+            }
+            return points;
+        }
+
+        RegionPointsDelta readDelta() {
+            RegionId regionId = readRegionId();
+            long sequenceNr = readVarLong();
+            boolean snapshot = readByte() != 0;
+            List<PointOfInterest> updated = readPoints();
+            int removedSize = readVarInt();
+            List<String> removed = new ArrayList<>(removedSize);
+            for (int i = 0; i < removedSize; i++) {
+                removed.add(readId());
+            }
+            return new RegionPointsDelta(regionId, sequenceNr, snapshot, updated, removed);
+        }
+    }
+}
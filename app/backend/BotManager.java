@@ -3,17 +3,11 @@ package backend;
 import actors.GeoJsonBot;
 import akka.actor.*;
 import akka.cluster.Cluster;
-import com.fasterxml.jackson.databind.JsonNode;
-import org.geojson.Feature;
-import org.geojson.FeatureCollection;
-import org.geojson.LineString;
-import play.libs.Json;
+import backend.BotTrails.Trail;
 import scala.concurrent.duration.Duration;
 
-import java.io.InputStream;
 import java.net.URL;
 import java.util.List;
-import java.util.Optional;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
@@ -35,15 +29,20 @@ public class BotManager extends UntypedActor {
     }
 
     private final Object port = Cluster.get(getContext().system()).selfAddress().port().get();
-    private final int max = Settings.SettingsProvider.get(getContext().system()).TotalNumberOfBots;
+    private final SettingsImpl settings = Settings.SettingsProvider.get(getContext().system());
+    private final int max = settings.TotalNumberOfBots;
 
     private int total = 0;
 
+    /**
+     * The trails, loaded on the first tick, and shared by all the bots.
+     */
+    private List<Trail> trails;
+
     private static Object TICK = new Object();
 
-    private final Cancellable tickTask = getContext().system().scheduler().schedule(
-            Duration.apply(1, TimeUnit.SECONDS), Duration.apply(3, TimeUnit.SECONDS),
-            self(), TICK, getContext().dispatcher(), self());
+    private final Cancellable tickTask = Ticks.TicksProvider.get(getContext().system())
+            .schedule(Duration.apply(3, TimeUnit.SECONDS), self(), TICK);
 
     public void postStop() throws Exception {
         tickTask.cancel();
@@ -55,36 +54,49 @@ public class BotManager extends UntypedActor {
 
         } else if (msg == TICK) {
 
+            if (trails == null) {
+                trails = BotTrails.load(data);
+            }
+
+            if (settings.BotsSimulated) {
+                startSimulation();
+                return;
+            }
+
             int totalBefore = total;
             boolean originalTrail = total == 0;
-            for (URL url : data) {
-                JsonNode json;
-                try (InputStream is = url.openStream()) {
-                    json = Json.parse(is);
+            for (Trail trail : trails) {
+                if (total >= max) {
+                    break;
                 }
-                FeatureCollection collection = Json.fromJson(json, FeatureCollection.class);
-                for (int i = 0; i < collection.getFeatures().size(); i++) {
-                    Feature feature = collection.getFeatures().get(i);
-                    if (feature.getGeometry() instanceof LineString && total < max) {
-                        LineString route = (LineString) feature.getGeometry();
-                        total++;
-                        String name = Optional.ofNullable(feature.getProperty("name")).orElse("").toString();
-                        String userId = "bot-" + total + "-" + port + "-" + ThreadLocalRandom.current().nextInt(1000) + "-" + i + "-" +
-                                Optional.ofNullable(feature.getId()).orElse(Integer.toString(i)) + "-" + name;
-                        if (originalTrail) {
-                            getContext().actorOf(GeoJsonBot.props(route, 0, 0, userId, regionManagerClient));
-                        } else {
-                            getContext().actorOf(GeoJsonBot.props(route,
-                                    ThreadLocalRandom.current().nextDouble() * 15.0,
-                                    ThreadLocalRandom.current().nextDouble() * -30.0, userId, regionManagerClient));
-                        }
-                    } else {
-                        throw new RuntimeException("Got unknown geometry: " + feature.getGeometry());
-                    }
+                total++;
+                String userId = "bot-" + total + "-" + port + "-" + ThreadLocalRandom.current().nextInt(1000) + "-" +
+                        trail.getIndex() + "-" + trail.getId() + "-" + trail.getName();
+                if (originalTrail) {
+                    getContext().actorOf(GeoJsonBot.props(trail, 0, 0, userId, regionManagerClient));
+                } else {
+                    getContext().actorOf(GeoJsonBot.props(trail,
+                            ThreadLocalRandom.current().nextDouble() * 15.0,
+                            ThreadLocalRandom.current().nextDouble() * -30.0, userId, regionManagerClient));
                 }
             }
             System.out.println("Started " + (total - totalBefore) + " bots, total " + total);
         }
     }
 
+    /**
+     * Start all the bots at once, shared between the simulation engines.
+     */
+    private void startSimulation() {
+        tickTask.cancel();
+        int engines = Math.max(settings.SimulationEngines, 1);
+        for (int i = 0; i < engines; i++) {
+            int count = max / engines + (i < max % engines ? 1 : 0);
+            String idPrefix = "sim-" + port + "-" + ThreadLocalRandom.current().nextInt(1000) + "-" + i + "-";
+            getContext().actorOf(BotSimulator.props(regionManagerClient, trails, idPrefix, count), "simulator-" + i);
+        }
+        total = max;
+        System.out.println("Started " + max + " simulated bots on " + engines + " engines");
+    }
+
 }
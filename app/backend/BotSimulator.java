@@ -0,0 +1,167 @@
+package backend;
+
+import actors.PositionSubscriber;
+import akka.actor.*;
+import backend.BotTrails.Trail;
+import backend.RegionManagerProtocol.UpdateUserPosition;
+import backend.RegionManagerProtocol.UpdateUserPositions;
+import models.backend.BoundingBox;
+import models.backend.LatLng;
+import models.backend.PointOfInterest.UserPosition;
+import models.backend.RegionId;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates many bots walking back and forth along the trails, for load testing.
+ *
+ * The state of the bots is held in arrays, one entry per bot, rather than in an actor per bot.  On each step, the
+ * engine moves the next slice of its bots, so that each bot moves once per update interval, and sends their new
+ * positions to the region manager client in batches, with their regions already worked out.
+ *
+ * The engine also keeps a number of position subscribers, as the bot actors do, and moves their viewports in turn to
+ * the area around a random bot.  The updates the viewers send are dropped, it's the load of producing them that
+ * matters.
+ */
+public class BotSimulator extends UntypedActor {
+
+    public static Props props(ActorRef regionManagerClient, List<Trail> trails, String idPrefix, int count) {
+        return Props.create(BotSimulator.class, () -> new BotSimulator(regionManagerClient, trails, idPrefix, count));
+    }
+
+    private static final Object STEP = new Object();
+    private static final Object VIEW = new Object();
+
+    private final ActorRef regionManagerClient;
+    private final SettingsImpl settings = Settings.SettingsProvider.get(getContext().system());
+
+    private final Trail[] trails;
+    private final String[] userIds;
+    private final int[] trailIndexes;
+    private final int[] positions;
+    private final int[] directions;
+    private final double[] offsetLats;
+    private final double[] offsetLngs;
+
+    /**
+     * The number of bots moved on each step.
+     */
+    private final int stepSize;
+
+    /**
+     * The next bot to move.
+     */
+    private int next = 0;
+
+    private final List<ActorRef> viewers = new ArrayList<>();
+    private int nextViewer = 0;
+
+    private final Cancellable stepTask;
+    private final Cancellable viewTask;
+
+    public BotSimulator(ActorRef regionManagerClient, List<Trail> trails, String idPrefix, int count) {
+        this.regionManagerClient = regionManagerClient;
+        this.trails = trails.toArray(new Trail[trails.size()]);
+
+        userIds = new String[count];
+        trailIndexes = new int[count];
+        positions = new int[count];
+        directions = new int[count];
+        offsetLats = new double[count];
+        offsetLngs = new double[count];
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            userIds[i] = idPrefix + i;
+            trailIndexes[i] = i % this.trails.length;
+            positions[i] = random.nextInt(this.trails[trailIndexes[i]].size());
+            directions[i] = random.nextBoolean() ? 1 : -1;
+            if (random.nextDouble() >= settings.SimulationHotSpotFraction) {
+                offsetLats[i] = random.nextDouble() * 15.0;
+                offsetLngs[i] = random.nextDouble() * -30.0;
+            }
+        }
+
+        long steps = Math.max(settings.SimulationUpdateInterval.toMillis() / settings.SimulationStepInterval.toMillis(), 1);
+        stepSize = (int) Math.min((count + steps - 1) / steps, count);
+
+        Scheduler scheduler = getContext().system().scheduler();
+        stepTask = scheduler.schedule(settings.SimulationStepInterval, settings.SimulationStepInterval, self(), STEP,
+                getContext().dispatcher(), self());
+
+        for (int i = 0; i < settings.SimulationViewers; i++) {
+            viewers.add(getContext().actorOf(PositionSubscriber.props(self()), "viewer-" + i));
+        }
+        if (count > 0 && !viewers.isEmpty()) {
+            // Spread the viewport changes of the viewers evenly over the viewport interval
+            FiniteDuration interval = Duration.apply(
+                    Math.max(settings.SimulationViewportInterval.toMillis() / viewers.size(), 1), TimeUnit.MILLISECONDS);
+            viewTask = scheduler.schedule(interval, interval, self(), VIEW, getContext().dispatcher(), self());
+        } else {
+            viewTask = null;
+        }
+    }
+
+    public void postStop() throws Exception {
+        stepTask.cancel();
+        if (viewTask != null) {
+            viewTask.cancel();
+        }
+    }
+
+    public void onReceive(Object msg) throws Exception {
+        if (msg == STEP) {
+            step();
+
+        } else if (msg == VIEW) {
+            int bot = ThreadLocalRandom.current().nextInt(userIds.length);
+            Trail trail = trails[trailIndexes[bot]];
+            double lat = trail.getLat(positions[bot]) + offsetLats[bot];
+            double lng = trail.getLng(positions[bot]) + offsetLngs[bot];
+            double w = ThreadLocalRandom.current().nextDouble() * 10.0;
+            double h = ThreadLocalRandom.current().nextDouble() * 20.0;
+            viewers.get(nextViewer).tell(new BoundingBox(new LatLng(lat - w / 2, lng - h / 2),
+                    new LatLng(lat + w / 2, lng + h / 2)), self());
+            nextViewer = (nextViewer + 1) % viewers.size();
+        }
+    }
+
+    /**
+     * Move the next slice of bots, and send their new positions.
+     */
+    private void step() {
+        long now = System.currentTimeMillis();
+        List<UpdateUserPosition> batch = new ArrayList<>(Math.min(stepSize, settings.PositionBatchMaxSize));
+        for (int n = 0; n < stepSize; n++) {
+            int bot = next;
+            next = (next + 1) % userIds.length;
+
+            Trail trail = trails[trailIndexes[bot]];
+            int pos = positions[bot];
+            if (trail.size() > 1) {
+                if (pos + directions[bot] < 0 || pos + directions[bot] >= trail.size()) {
+                    directions[bot] = -directions[bot];
+                }
+                pos += directions[bot];
+                positions[bot] = pos;
+            }
+
+            LatLng latLng = new LatLng(trail.getLat(pos) + offsetLats[bot], trail.getLng(pos) + offsetLngs[bot]);
+            RegionId regionId = settings.GeoFunctions.regionForPoint(latLng);
+            batch.add(new UpdateUserPosition(regionId, new UserPosition(userIds[bot], now, latLng)));
+
+            if (batch.size() >= settings.PositionBatchMaxSize) {
+                regionManagerClient.tell(new UpdateUserPositions(batch), self());
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            regionManagerClient.tell(new UpdateUserPositions(batch), self());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package backend;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import org.geojson.Feature;
+import org.geojson.FeatureCollection;
+import org.geojson.LineString;
+import org.geojson.LngLatAlt;
+import play.libs.Json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The trails that bots walk, parsed once from the GeoJSON bot data.
+ *
+ * Each trail holds its coordinates in a single primitive array, rather than as a LineString of coordinate objects,
+ * and is immutable, so any number of bots can share it.
+ */
+public class BotTrails {
+
+    /**
+     * A trail, from a LineString feature of the bot data.
+     */
+    public static class Trail {
+        private final int index;
+        private final String id;
+        private final String name;
+
+        /**
+         * The latitude and longitude of each point, interleaved.
+         */
+        private final double[] coordinates;
+
+        private Trail(int index, String id, String name, double[] coordinates) {
+            this.index = index;
+            this.id = id;
+            this.name = name;
+            this.coordinates = coordinates;
+        }
+
+        /**
+         * The index of the feature in its feature collection.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * The id of the feature, or its index if it has none.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * The name property of the feature, or the empty string if it has none.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The number of points in the trail.
+         */
+        public int size() {
+            return coordinates.length / 2;
+        }
+
+        public double getLat(int point) {
+            return coordinates[point * 2];
+        }
+
+        public double getLng(int point) {
+            return coordinates[point * 2 + 1];
+        }
+    }
+
+    /**
+     * Load the trails from the given GeoJSON feature collections.
+     *
+     * @param data The URLs of the feature collections.
+     * @return The trails, in the order of the data, then of the features.
+     */
+    public static List<Trail> load(List<URL> data) throws IOException {
+        ImmutableList.Builder<Trail> trails = ImmutableList.builder();
+        for (URL url : data) {
+            JsonNode json;
+            try (InputStream is = url.openStream()) {
+                json = Json.parse(is);
+            }
+            FeatureCollection collection = Json.fromJson(json, FeatureCollection.class);
+            for (int i = 0; i < collection.getFeatures().size(); i++) {
+                Feature feature = collection.getFeatures().get(i);
+                if (feature.getGeometry() instanceof LineString) {
+                    List<LngLatAlt> points = ((LineString) feature.getGeometry()).getCoordinates();
+                    double[] coordinates = new double[points.size() * 2];
+                    for (int p = 0; p < points.size(); p++) {
+                        coordinates[p * 2] = points.get(p).getLatitude();
+                        coordinates[p * 2 + 1] = points.get(p).getLongitude();
+                    }
+                    trails.add(new Trail(i, Optional.ofNullable(feature.getId()).orElse(Integer.toString(i)),
+                            Optional.ofNullable(feature.getProperty("name")).orElse("").toString(), coordinates));
+                } else {
+                    throw new RuntimeException("Got unknown geometry: " + feature.getGeometry());
+                }
+            }
+        }
+        return trails.build();
+    }
+}
@@ -0,0 +1,181 @@
+package backend;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.dispatch.*;
+import com.typesafe.config.Config;
+import models.backend.PointOfInterest.UserPosition;
+import models.backend.RegionPositions;
+import scala.Option;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+
+/**
+ * A mailbox that coalesces the queued positions of each user.
+ *
+ * A user position enqueued while an earlier position of the same user is still queued replaces the earlier one in
+ * place, so only the latest position of each user is ever processed, and a backlog of positions is bounded by the
+ * number of distinct users rather than by the rate they move at.  Likewise, a batch of region positions enqueued while
+ * an earlier batch for the same region is still queued is merged into the earlier one, keeping the latest position of
+ * each user, so a backlog of batches is bounded by the number of regions.  All other messages are queued as usual.
+ *
+ * It's selected by the mailbox-type of the position dispatcher in application.conf, which regions and position
+ * subscribers run on.
+ */
+public class CoalescingMailbox implements MailboxType, ProducesMessageQueue<CoalescingMailbox.CoalescingMessageQueue> {
+
+    /**
+     * The id of the position dispatcher.
+     */
+    public static final String DISPATCHER = "position-dispatcher";
+
+    public CoalescingMailbox(ActorSystem.Settings settings, Config config) {
+    }
+
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        return new CoalescingMessageQueue();
+    }
+
+    /**
+     * A place in the queue, holding the envelope that will be dequeued from it.  Once dequeued, it can't be
+     * replaced anymore.
+     */
+    private static class Slot {
+        private static final Envelope TAKEN = new Envelope(null, null);
+
+        private final AtomicReference<Envelope> envelope;
+
+        private Slot(Envelope envelope) {
+            this.envelope = new AtomicReference<>(envelope);
+        }
+
+        /**
+         * Coalesce the given envelope with the envelope of this slot.
+         *
+         * @param coalesce Gives the envelope to hold, from the queued envelope and the given envelope.
+         * @return false if the slot has already been dequeued.
+         */
+        private boolean replace(Envelope handle, BinaryOperator<Envelope> coalesce) {
+            while (true) {
+                Envelope current = envelope.get();
+                if (current == TAKEN) {
+                    return false;
+                }
+                Envelope coalesced = coalesce.apply(current, handle);
+                if (coalesced == current || envelope.compareAndSet(current, coalesced)) {
+                    return true;
+                }
+            }
+        }
+
+        private Envelope take() {
+            return envelope.getAndSet(TAKEN);
+        }
+    }
+
+    public static class CoalescingMessageQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+
+        private final Queue<Slot> queue = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The slots of the users with a position in the queue, by user id.
+         */
+        private final ConcurrentHashMap<String, Slot> positions = new ConcurrentHashMap<>();
+
+        /**
+         * The slots of the regions with a batch of positions in the queue, by region key.
+         */
+        private final ConcurrentHashMap<Long, Slot> regionPositions = new ConcurrentHashMap<>();
+
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            if (handle.message() instanceof UserPosition) {
+                enqueue(positions, ((UserPosition) handle.message()).getId(), handle, CoalescingMessageQueue::latest);
+            } else if (handle.message() instanceof RegionPositions) {
+                enqueue(regionPositions, ((RegionPositions) handle.message()).getRegionId().getKey(), handle,
+                        CoalescingMessageQueue::merge);
+            } else {
+                queue.add(new Slot(handle));
+            }
+        }
+
+        private <K> void enqueue(ConcurrentHashMap<K, Slot> slots, K key, Envelope handle,
+                                 BinaryOperator<Envelope> coalesce) {
+            Slot slot = new Slot(handle);
+            while (true) {
+                Slot queued = slots.putIfAbsent(key, slot);
+                if (queued == null) {
+                    queue.add(slot);
+                    return;
+                } else if (queued.replace(handle, coalesce)) {
+                    return;
+                } else if (slots.replace(key, queued, slot)) {
+                    // the queued message was dequeued as it was being replaced
+                    queue.add(slot);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * The later of two positions of a user.
+         */
+        private static Envelope latest(Envelope queued, Envelope handle) {
+            if (((UserPosition) queued.message()).getTimestamp() > ((UserPosition) handle.message()).getTimestamp()) {
+                return queued;
+            } else {
+                return handle;
+            }
+        }
+
+        /**
+         * Two batches of positions of a region merged into one, with the latest position of each user.
+         */
+        private static Envelope merge(Envelope queued, Envelope handle) {
+            RegionPositions earlier = (RegionPositions) queued.message();
+            Map<String, UserPosition> latest = new LinkedHashMap<>();
+            for (UserPosition pos : earlier.getPositions()) {
+                latest.put(pos.getId(), pos);
+            }
+            for (UserPosition pos : ((RegionPositions) handle.message()).getPositions()) {
+                latest.merge(pos.getId(), pos, (a, b) -> a.getTimestamp() > b.getTimestamp() ? a : b);
+            }
+            return new Envelope(new RegionPositions(earlier.getRegionId(), latest.values()), handle.sender());
+        }
+
+        public Envelope dequeue() {
+            Slot slot = queue.poll();
+            if (slot == null) {
+                return null;
+            }
+            Envelope envelope = slot.take();
+            if (envelope.message() instanceof UserPosition) {
+                positions.remove(((UserPosition) envelope.message()).getId(), slot);
+            } else if (envelope.message() instanceof RegionPositions) {
+                regionPositions.remove(((RegionPositions) envelope.message()).getRegionId().getKey(), slot);
+            }
+            return envelope;
+        }
+
+        public int numberOfMessages() {
+            return queue.size();
+        }
+
+        public boolean hasMessages() {
+            return !queue.isEmpty();
+        }
+
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            Envelope envelope = dequeue();
+            while (envelope != null) {
+                deadLetters.enqueue(owner, envelope);
+                envelope = dequeue();
+            }
+        }
+    }
+}
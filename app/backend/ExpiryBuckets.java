@@ -0,0 +1,111 @@
+package backend;
+
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Tracks when keys expire, in buckets of a fixed resolution.
+ *
+ * Expiring only looks at the buckets that are due, so its cost is proportional to the number of keys that actually
+ * expire, rather than to the number of keys tracked.  Keys are expired in the first call to expire at or after the
+ * end of their bucket, ie up to one resolution late.
+ *
+ * @param <K> The type of the keys.
+ */
+public class ExpiryBuckets<K> {
+
+    private final long resolution;
+
+    /**
+     * The bucket of each key.
+     */
+    private final Map<K, Long> ticks = new HashMap<>();
+
+    /**
+     * The keys in each bucket, ordered by bucket.
+     */
+    private final TreeMap<Long, Set<K>> buckets = new TreeMap<>();
+
+    /**
+     * @param resolution The width of each bucket.  Keys that are rescheduled within the same bucket cost nothing.
+     */
+    public ExpiryBuckets(FiniteDuration resolution) {
+        this.resolution = resolution.toNanos();
+    }
+
+    /**
+     * Schedule the given key to expire, replacing its previous deadline.
+     *
+     * Moving a key to another bucket allocates its boxed bucket and an entry in the bucket's set, and a new set when
+     * it's the first key in the bucket.
+     *
+     * @param deadline The System.nanoTime() at which the key expires.
+     */
+    public void schedule(K key, long deadline) {
+        // Round up, so that a key is never expired before its deadline
+        long tick = -Math.floorDiv(-deadline, resolution);
+        Long current = ticks.get(key);
+        if (current == null || current != tick) {
+            if (current != null) {
+                removeFromBucket(key, current);
+            }
+            ticks.put(key, tick);
+            buckets.computeIfAbsent(tick, t -> new HashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * Stop tracking the given key.
+     */
+    public void cancel(K key) {
+        Long current = ticks.remove(key);
+        if (current != null) {
+            removeFromBucket(key, current);
+        }
+    }
+
+    private void removeFromBucket(K key, long tick) {
+        Set<K> bucket = buckets.get(tick);
+        bucket.remove(key);
+        if (bucket.isEmpty()) {
+            buckets.remove(tick);
+        }
+    }
+
+    /**
+     * Expire all keys whose bucket has ended.
+     *
+     * @param now     The current System.nanoTime().
+     * @param expired Called with each expired key, after it has stopped being tracked.
+     */
+    public void expire(long now, Consumer<K> expired) {
+        long tick = Math.floorDiv(now, resolution);
+        while (!buckets.isEmpty() && buckets.firstKey() <= tick) {
+            for (K key : buckets.pollFirstEntry().getValue()) {
+                ticks.remove(key);
+                expired.accept(key);
+            }
+        }
+    }
+
+    /**
+     * Stop tracking all keys.
+     */
+    public void clear() {
+        ticks.clear();
+        buckets.clear();
+    }
+
+    /**
+     * The number of keys tracked.
+     */
+    public int size() {
+        return ticks.size();
+    }
+}
@@ -1,5 +1,7 @@
 package backend;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import models.backend.*;
 import models.backend.PointOfInterest.*;
@@ -17,18 +19,39 @@ public class GeoFunctions {
 
     private final SettingsImpl settings;
 
+    /**
+     * The regions of recently requested bounding boxes, keyed by the span of cells they cover at the max zoom depth,
+     * since that's all the regions depend on.
+     */
+    private final Cache<CellSpan, Set<RegionId>> regionsCache;
+
+    /**
+     * The keys of the regions that are currently split.
+     */
+    private volatile Set<Long> splitRegions = ImmutableSet.of();
+
     GeoFunctions(SettingsImpl settings) {
         this.settings = settings;
+        this.regionsCache = CacheBuilder.newBuilder().maximumSize(settings.RegionCacheSize).build();
     }
 
     /**
      * Get the region for the given point.
      *
+     * This is the region at the max zoom depth, or, where that region has been split, the deepest region it has
+     * been split into that contains the point.
+     *
      * @param point The point.
-     * @return The id of the region at the given zoom depth.
+     * @return The id of the region.
      */
     public RegionId regionForPoint(LatLng point) {
-        return regionForPoint(point, settings.MaxZoomDepth);
+        RegionId region = regionForPoint(point, settings.MaxZoomDepth);
+        Set<Long> splits = splitRegions;
+        int maxDepth = settings.MaxZoomDepth + settings.RegionSplitDepth;
+        while (!splits.isEmpty() && region.getZoomLevel() < maxDepth && splits.contains(region.getKey())) {
+            region = regionForPoint(point, region.getZoomLevel() + 1);
+        }
+        return region;
     }
 
     /**
@@ -39,7 +62,7 @@ public class GeoFunctions {
      * @return The id of the region at the given zoom depth.
      */
     public RegionId regionForPoint(LatLng point, int zoomDepth) {
-        assert (zoomDepth <= settings.MaxZoomDepth);
+        assert (zoomDepth <= settings.MaxZoomDepth + settings.RegionSplitDepth);
         long axisSteps = 1l << zoomDepth;
         double xStep = 360d / axisSteps;
         int x = (int) Math.floor((point.getLng() + 180) / xStep);
@@ -55,7 +78,108 @@ public class GeoFunctions {
      * @return The regions
      */
     public Set<RegionId> regionsForBoundingBox(BoundingBox bbox) {
-        return regionsAtZoomLevel(bbox, settings.MaxZoomDepth);
+        int maxZoom = settings.MaxZoomDepth;
+        RegionId southWestRegion = regionForPoint(bbox.getSouthWest(), maxZoom);
+        RegionId northEastRegion = regionForPoint(bbox.getNorthEast(), maxZoom);
+        if (northEastRegion.getX() < southWestRegion.getX() || northEastRegion.getY() < southWestRegion.getY()) {
+            // An inverted bounding box, leave it to the search through the zoom levels
+            return regionsAtZoomLevel(bbox, maxZoom);
+        }
+        CellSpan span = new CellSpan(southWestRegion.getX(), southWestRegion.getY(), northEastRegion.getX(),
+                northEastRegion.getY());
+        Set<RegionId> regions = regionsCache.getIfPresent(span);
+        if (regions == null) {
+            regions = regionsForCellSpan(span);
+            regionsCache.put(span, regions);
+        }
+        return regions;
+    }
+
+    /**
+     * Get the regions covering the given span of cells at the max zoom depth.
+     *
+     * Region coordinates are floor((lng + 180) / 360 * 2 ^^ zoomLevel), and likewise for latitude, so the coordinates
+     * at any shallower zoom level are the coordinates at the max zoom depth shifted right by the difference.  The
+     * number of regions covering the span shrinks by about four per zoom level, so the zoom level is estimated from
+     * the number of cells, and then corrected by at most a level or two either way.
+     */
+    private Set<RegionId> regionsForCellSpan(CellSpan span) {
+        int maxZoom = settings.MaxZoomDepth;
+        int maxRegions = settings.MaxSubscriptionRegions;
+
+        long cells = span.regionsAtShift(0);
+        long ratio = cells / Math.max(maxRegions, 1);
+        int shift = Math.min(ratio == 0 ? 0 : (63 - Long.numberOfLeadingZeros(ratio)) / 2, maxZoom);
+        while (shift > 0 && span.regionsAtShift(shift - 1) <= maxRegions) {
+            shift--;
+        }
+        while (shift < maxZoom && span.regionsAtShift(shift) > maxRegions) {
+            shift++;
+        }
+
+        int zoomLevel = maxZoom - shift;
+        if (zoomLevel == 0) {
+            return ImmutableSet.of(new RegionId(0, 0, 0));
+        }
+        int axisSteps = 1 << zoomLevel;
+        int westX = span.westX >> shift;
+        int southY = span.southY >> shift;
+        int xLength = (span.eastX >> shift) - westX + 1;
+        int numRegions = (int) span.regionsAtShift(shift);
+        ImmutableSet.Builder<RegionId> regions = ImmutableSet.builder();
+        for (int i = 0; i < numRegions; i++) {
+            int y = i / xLength;
+            int x = i % xLength;
+            // We need to mod positive the x value, because it's possible that the bounding box started or ended
+            // from less than -180 or greater than 180 W/E.
+            regions.add(new RegionId(zoomLevel, modPositive(westX + x, axisSteps), southY + y));
+        }
+        return regions.build();
+    }
+
+    /**
+     * The span of cells covered by a bounding box at the max zoom depth, inclusive of both corners.
+     */
+    private static class CellSpan {
+        private final int westX;
+        private final int southY;
+        private final int eastX;
+        private final int northY;
+
+        CellSpan(int westX, int southY, int eastX, int northY) {
+            this.westX = westX;
+            this.southY = southY;
+            this.eastX = eastX;
+            this.northY = northY;
+        }
+
+        /**
+         * The number of regions covering this span at the given number of zoom levels above the max zoom depth.
+         */
+        long regionsAtShift(int shift) {
+            long xLength = (eastX >> shift) - (westX >> shift) + 1;
+            long yLength = (northY >> shift) - (southY >> shift) + 1;
+            return xLength * yLength;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            CellSpan span = (CellSpan) o;
+
+            return westX == span.westX && southY == span.southY && eastX == span.eastX && northY == span.northY;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = westX;
+            result = 31 * result + southY;
+            result = 31 * result + eastX;
+            result = 31 * result + northY;
+            return result;
+        }
     }
 
     private Set<RegionId> regionsAtZoomLevel(BoundingBox bbox, int zoomLevel) {
@@ -107,8 +231,16 @@ public class GeoFunctions {
                 new LatLng(latRegion + yStep, lngRegion + xStep));
     }
 
+    /**
+     * Get the summary region for the given region.
+     *
+     * Regions split below the max zoom depth are summarised by the summary region of the region they were split
+     * from, since the regions they were split from are regions, not summary regions.
+     */
     public Optional<RegionId> summaryRegionForRegion(RegionId regionId) {
-        if (regionId.getZoomLevel() == 0) {
+        if (regionId.getZoomLevel() > settings.MaxZoomDepth) {
+            return Optional.of(ancestorOfRegion(regionId, settings.MaxZoomDepth - 1));
+        } else if (regionId.getZoomLevel() == 0) {
             return Optional.empty();
         } else {
             return Optional.of(new RegionId(regionId.getZoomLevel() - 1, regionId.getX() >>> 1, regionId.getY() >>> 1));
@@ -116,43 +248,98 @@ public class GeoFunctions {
     }
 
     /**
-   * Cluster the given points into n2 boxes
-   *
-   * @param id The id of the region
-   * @param bbox The bounding box within which to cluster
-   * @param points The points to cluster
-   * @return The clustered points
-   */
-  public List<PointOfInterest> cluster(String id, BoundingBox bbox, List<PointOfInterest> points) {
-    if (points.size() > settings.ClusterThreshold) {
-      return groupNBoxes(bbox, settings.ClusterDimension, points).filter(cluster -> !cluster._2.isEmpty()).map(cluster -> {
-          if (cluster._2.size() == 1) {
-              return cluster._2.get(0);
-          } else {
-
-              // Map to a tuple of the lat/long/count representing the point, then reduce to the totals of these
-              F.Tuple3<Double, Double, Integer> result = cluster._2.stream().map(point -> {
-                  int count = 1;
-                  if (point instanceof Cluster) {
-                      // A cluster should have its lat/lng weighted by its count
-                      count = ((Cluster) point).getCount();
-                  }
-                  // Normalise to a 0-360 based version of longitude
-                  double normalisedWest = modPositive(point.getPosition().getLng() + 180, 360);
-                  return new F.Tuple3<Double, Double, Integer>(point.getPosition().getLat() * count,
-                          normalisedWest * count, count);
-              }).reduce(new F.Tuple3<>(0d, 0d, 0), (a, b) -> new F.Tuple3<>(a._1 + b._1, a._2 + b._2, a._3 + b._3));
-
-              // Compute averages
-              int count = result._3;
-              return new Cluster(id + "-" + cluster._1, System.currentTimeMillis(),
-                      new LatLng(result._1 / count, (result._2 / count) - 180), count);
-          }
-      }).collect(Collectors.toList());
-    } else {
-      return points;
-    }
-  }
+     * Get the region at the given zoom level that contains the given region.
+     */
+    public RegionId ancestorOfRegion(RegionId regionId, int zoomLevel) {
+        int shift = regionId.getZoomLevel() - zoomLevel;
+        return new RegionId(zoomLevel, regionId.getX() >>> shift, regionId.getY() >>> shift);
+    }
+
+    /**
+     * Get the region whose topic the positions of the given region are published to.
+     *
+     * Subscribers only subscribe to regions down to the max zoom depth, so regions split below it publish to the
+     * topic of the region they were split from.
+     */
+    public RegionId topicRegionForRegion(RegionId regionId) {
+        if (regionId.getZoomLevel() > settings.MaxZoomDepth) {
+            return ancestorOfRegion(regionId, settings.MaxZoomDepth);
+        } else {
+            return regionId;
+        }
+    }
+
+    /**
+     * Whether the given region is currently split into child regions.
+     */
+    public boolean isSplit(RegionId regionId) {
+        return splitRegions.contains(regionId.getKey());
+    }
+
+    /**
+     * Set the keys of the regions that are currently split, as replicated by the region splits extension.
+     */
+    void setSplitRegions(Set<Long> splitRegions) {
+        this.splitRegions = splitRegions;
+    }
+
+    /**
+     * Cluster the given points into n2 boxes
+     *
+     * @param id The id of the region
+     * @param bbox The bounding box within which to cluster
+     * @param points The points to cluster
+     * @return The clustered points
+     */
+    public List<PointOfInterest> cluster(String id, BoundingBox bbox, List<PointOfInterest> points) {
+        if (points.size() > settings.ClusterThreshold) {
+            return clusterer().cluster(id, bbox, points);
+        } else {
+            return points;
+        }
+    }
+
+    /**
+     * Create a new clusterer, for an actor that clusters its points repeatedly.
+     */
+    public PointClusterer clusterer() {
+        return new PointClusterer(this, settings.ClusterThreshold, settings.ClusterDimension);
+    }
+
+    /**
+     * Create a new clusterer with its own threshold and dimension.
+     *
+     * @param threshold The number of points above which to cluster
+     * @param dimension The clusters are put into the square of this number boxes
+     */
+    public PointClusterer clusterer(int threshold, int dimension) {
+        return new PointClusterer(this, threshold, dimension);
+    }
+
+    /**
+     * Whether the given point lies in the given bounding box, taking into account the 180 cut over
+     */
+    public boolean contains(BoundingBox bbox, LatLng point) {
+        double lat = point.getLat();
+        if (lat < bbox.getSouthWest().getLat() || lat > bbox.getNorthEast().getLat()) {
+            return false;
+        }
+        double west = bbox.getSouthWest().getLng();
+        double east = bbox.getNorthEast().getLng();
+        if (east - west >= 360) {
+            return true;
+        }
+        // Normalise so that the western most point is 0
+        double range = (east - west) % 360;
+        if (range < 0) {
+            range += 360;
+        }
+        double normalisedPoint = (point.getLng() - west) % 360;
+        if (normalisedPoint < 0) {
+            normalisedPoint += 360;
+        }
+        return normalisedPoint <= range;
+    }
 
     /**
      * Group the positions into n2 boxes
@@ -161,7 +348,7 @@ public class GeoFunctions {
      * @param positions The positions to group
      * @return The grouped positions
      */
-    private Stream<F.Tuple<Integer, List<PointOfInterest>>> groupNBoxes(BoundingBox bbox, int n, List<PointOfInterest> positions) {
+    Stream<F.Tuple<Integer, List<PointOfInterest>>> groupNBoxes(BoundingBox bbox, int n, List<PointOfInterest> positions) {
         F.Tuple<Integer, List<PointOfInterest>>[] boxes = new F.Tuple[n * n];
         for (int i = 0; i < n * n; i++) {
             boxes[i] = new F.Tuple<>(i, new ArrayList<>());
@@ -0,0 +1,98 @@
+package backend;
+
+import akka.actor.ActorRef;
+import akka.contrib.pattern.ShardCoordinator;
+import scala.collection.JavaConversions;
+import scala.collection.immutable.HashSet;
+import scala.collection.immutable.IndexedSeq;
+import scala.collection.immutable.Map;
+import scala.collection.immutable.Set;
+
+/**
+ * Allocates region shards by their load, rather than by their number.
+ *
+ * New shards go to the least loaded node.  When the most loaded node carries more than the rebalance threshold
+ * times the mean load of the nodes, one of its shards is moved off it: the busiest shard whose move narrows the gap
+ * between it and the least loaded node, without overshooting.  A single shard hotter than that stays where it is,
+ * moving it would only move the hot spot.
+ *
+ * The load of the shards comes from the reports collected by the {@link ShardLoadReporter} of this node.
+ */
+public class LoadAwareAllocationStrategy implements ShardCoordinator.ShardAllocationStrategy {
+
+    private final ShardLoads loads;
+    private final double rebalanceThreshold;
+
+    public LoadAwareAllocationStrategy(ShardLoads loads, double rebalanceThreshold) {
+        this.loads = loads;
+        this.rebalanceThreshold = rebalanceThreshold;
+    }
+
+    public ActorRef allocateShard(ActorRef requester, String shardId,
+                                  Map<ActorRef, IndexedSeq<String>> currentShardAllocations) {
+        java.util.Map<String, Double> shardLoads = loads.getLoads();
+        ActorRef least = null;
+        double leastLoad = 0;
+        int leastShards = 0;
+        for (java.util.Map.Entry<ActorRef, IndexedSeq<String>> entry :
+                JavaConversions.mapAsJavaMap(currentShardAllocations).entrySet()) {
+            double load = load(shardLoads, entry.getValue());
+            int shards = entry.getValue().size();
+            if (least == null || load < leastLoad || (load == leastLoad && shards < leastShards)) {
+                least = entry.getKey();
+                leastLoad = load;
+                leastShards = shards;
+            }
+        }
+        return least;
+    }
+
+    public Set<String> rebalance(Map<ActorRef, IndexedSeq<String>> currentShardAllocations,
+                                 Set<String> rebalanceInProgress) {
+        HashSet<String> none = new HashSet<>();
+        if (!rebalanceInProgress.isEmpty() || currentShardAllocations.size() < 2) {
+            return none;
+        }
+
+        java.util.Map<String, Double> shardLoads = loads.getLoads();
+        IndexedSeq<String> hottest = null;
+        double hottestLoad = 0;
+        double coolestLoad = Double.MAX_VALUE;
+        double total = 0;
+        for (IndexedSeq<String> shards : JavaConversions.asJavaIterable(currentShardAllocations.values())) {
+            double load = load(shardLoads, shards);
+            total += load;
+            if (hottest == null || load > hottestLoad) {
+                hottest = shards;
+                hottestLoad = load;
+            }
+            coolestLoad = Math.min(coolestLoad, load);
+        }
+
+        double mean = total / currentShardAllocations.size();
+        if (total == 0 || hottestLoad <= mean * rebalanceThreshold) {
+            return none;
+        }
+
+        // Moving a shard of up to half the gap leaves the hottest node at least as loaded as the coolest one
+        double gap = (hottestLoad - coolestLoad) / 2;
+        String move = null;
+        double moveLoad = 0;
+        for (String shardId : JavaConversions.seqAsJavaList(hottest)) {
+            double load = shardLoads.getOrDefault(shardId, 0.0);
+            if (load > moveLoad && load <= gap) {
+                move = shardId;
+                moveLoad = load;
+            }
+        }
+        return move == null ? none : none.$plus(move);
+    }
+
+    private double load(java.util.Map<String, Double> shardLoads, IndexedSeq<String> shards) {
+        double load = 0;
+        for (String shardId : JavaConversions.seqAsJavaList(shards)) {
+            load += shardLoads.getOrDefault(shardId, 0.0);
+        }
+        return load;
+    }
+}
@@ -27,6 +27,11 @@ public class Main {
     public static void main(String... args) {
         ActorSystem system = ActorSystem.create("application");
 
+        if (Settings.SettingsProvider.get(system).ShardingEnabled) {
+            // Start hosting, or routing to, the sharded regions
+            RegionSharding.RegionShardingProvider.get(system);
+        }
+
         if (Cluster.get(system).getSelfRoles().stream().anyMatch(r -> r.startsWith("backend"))) {
             system.actorOf(RegionManager.props(), "regionManager");
         }
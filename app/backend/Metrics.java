@@ -0,0 +1,21 @@
+package backend;
+
+import akka.actor.*;
+
+/**
+ * The latency metrics of this node.
+ */
+public class Metrics extends AbstractExtensionId<MetricsImpl>
+        implements ExtensionIdProvider {
+    public final static Metrics MetricsProvider = new Metrics();
+
+    private Metrics() {}
+
+    public Metrics lookup() {
+        return Metrics.MetricsProvider;
+    }
+
+    public MetricsImpl createExtension(ExtendedActorSystem system) {
+        return new MetricsImpl(system);
+    }
+}
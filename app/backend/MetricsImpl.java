@@ -0,0 +1,80 @@
+package backend;
+
+import akka.actor.ActorSystem;
+import akka.actor.Extension;
+import com.google.common.collect.ImmutableList;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+public class MetricsImpl implements Extension {
+
+    MetricsImpl(ActorSystem system) {
+        SettingsImpl settings = Settings.SettingsProvider.get(system);
+        this.Enabled = settings.MetricsEnabled;
+        this.RegionManager = new StageMetrics("regionManager", Enabled);
+        this.Region = new StageMetrics("region", Enabled);
+        this.Subscriber = new StageMetrics("subscriber", Enabled);
+        this.Client = new StageMetrics("client", Enabled);
+        this.Stages = ImmutableList.of(RegionManager, Region, Subscriber, Client);
+
+        if (Enabled) {
+            system.scheduler().schedule(settings.MetricsInterval, settings.MetricsInterval,
+                    () -> Stages.forEach(StageMetrics::roll), system.dispatcher());
+            registerMBeans(system);
+        }
+    }
+
+    /**
+     * Register the stages with the platform MBean server, replacing those of any earlier actor system of the same
+     * name, such as before a reload in dev mode.
+     */
+    private void registerMBeans(ActorSystem system) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (StageMetrics stage : Stages) {
+                ObjectName name = new ObjectName("reactiveMaps:type=Latency,system=" + system.name() +
+                        ",stage=" + stage.getName());
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(stage, name);
+            }
+        } catch (Exception e) {
+            system.log().warning("Could not register latency metrics with JMX: {}", e);
+        }
+    }
+
+  /**
+   * Whether latencies are recorded.
+   */
+  public final boolean Enabled;
+
+  /**
+   * Positions received by the region manager, from the region manager clients.  When regions are sharded, positions
+   * go from the region manager clients straight to the shard region, and are recorded as they're sent to it instead.
+   */
+  public final StageMetrics RegionManager;
+
+  /**
+   * Positions received by their region, from the region manager.
+   */
+  public final StageMetrics Region;
+
+  /**
+   * Positions received by position subscribers, from the regions they're subscribed to.
+   */
+  public final StageMetrics Subscriber;
+
+  /**
+   * Positions sent to clients, by their client connections.
+   */
+  public final StageMetrics Client;
+
+  /**
+   * All the stages, in the order positions pass them.
+   */
+  public final List<StageMetrics> Stages;
+}
@@ -0,0 +1,286 @@
+package backend;
+
+import models.backend.*;
+import models.backend.PointOfInterest.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Clusters points into n2 boxes.
+ *
+ * The weighted lat/lng and the count of each box are accumulated in primitive arrays in a single pass over the
+ * points, so clustering allocates nothing besides the resulting clusters.  The clusterer holds mutable state, so
+ * each actor should create its own, and reuse it on every tick.
+ */
+public class PointClusterer {
+
+    /**
+     * The running sums of the points in each of the n2 boxes.
+     *
+     * These can be kept per source of points, so that a source can be replaced without revisiting the points of the
+     * other sources.
+     */
+    public static class Boxes {
+
+        /**
+         * The sum of the count weighted latitudes of each box.
+         */
+        private final double[] latitudes;
+
+        /**
+         * The sum of the count weighted, 0-360 normalised, longitudes of each box.
+         */
+        private final double[] longitudes;
+
+        /**
+         * The sum of the counts of each box.
+         */
+        private final int[] counts;
+
+        /**
+         * The number of points added to each box.
+         */
+        private final int[] sizes;
+
+        /**
+         * The first point added to each box, returned as is if it's the only point in the box.
+         */
+        private final PointOfInterest[] firsts;
+
+        /**
+         * The source index of the first point added to each box, for points that were added by their coordinates.
+         */
+        private final int[] firstSources;
+
+        /**
+         * The number of points added to all boxes.
+         */
+        private int size = 0;
+
+        private Boxes(int boxes) {
+            this.latitudes = new double[boxes];
+            this.longitudes = new double[boxes];
+            this.counts = new int[boxes];
+            this.sizes = new int[boxes];
+            this.firsts = new PointOfInterest[boxes];
+            this.firstSources = new int[boxes];
+        }
+
+        /**
+         * The number of points in these boxes.
+         */
+        public int size() {
+            return size;
+        }
+
+        private void clear() {
+            Arrays.fill(latitudes, 0);
+            Arrays.fill(longitudes, 0);
+            Arrays.fill(counts, 0);
+            Arrays.fill(sizes, 0);
+            Arrays.fill(firsts, null);
+            size = 0;
+        }
+
+        private void add(int box, double lat, double normalisedLng, int count) {
+            sizes[box]++;
+            counts[box] += count;
+            latitudes[box] += lat * count;
+            longitudes[box] += normalisedLng * count;
+            size++;
+        }
+
+        private void addAll(Boxes boxes) {
+            for (int box = 0; box < sizes.length; box++) {
+                if (boxes.sizes[box] > 0) {
+                    if (sizes[box] == 0) {
+                        firsts[box] = boxes.firsts[box];
+                        firstSources[box] = boxes.firstSources[box];
+                    }
+                    sizes[box] += boxes.sizes[box];
+                    counts[box] += boxes.counts[box];
+                    latitudes[box] += boxes.latitudes[box];
+                    longitudes[box] += boxes.longitudes[box];
+                }
+            }
+            size += boxes.size;
+        }
+    }
+
+    private final GeoFunctions geoFunctions;
+    private final int threshold;
+    private final int dimension;
+
+    /**
+     * The sums of the points being clustered.
+     */
+    private final Boxes totals;
+
+    /**
+     * The cluster ids of each box, for the region id in lastId.
+     */
+    private final String[] clusterIds;
+    private String lastId;
+
+    private BoundingBox bbox;
+
+    PointClusterer(GeoFunctions geoFunctions, int threshold, int dimension) {
+        this.geoFunctions = geoFunctions;
+        this.threshold = threshold;
+        this.dimension = dimension;
+
+        this.totals = newBoxes();
+        this.clusterIds = new String[dimension * dimension];
+    }
+
+    /**
+     * Cluster the given points into n2 boxes, if there are more of them than the cluster threshold.
+     *
+     * @param id     The id of the region
+     * @param bbox   The bounding box within which to cluster
+     * @param points The points to cluster
+     * @return The clustered points
+     */
+    public List<PointOfInterest> cluster(String id, BoundingBox bbox, Collection<PointOfInterest> points) {
+        if (shouldCluster(points.size())) {
+            begin(bbox);
+            for (PointOfInterest point : points) {
+                add(point);
+            }
+            return finish(id);
+        } else {
+            return new ArrayList<>(points);
+        }
+    }
+
+    /**
+     * Whether the given number of points is enough to cluster them.
+     */
+    public boolean shouldCluster(int size) {
+        return size > threshold;
+    }
+
+    /**
+     * Create empty boxes, to sum points into.
+     */
+    public Boxes newBoxes() {
+        return new Boxes(dimension * dimension);
+    }
+
+    /**
+     * Replace the contents of the given boxes with the sums of the given points.
+     *
+     * @param boxes  The boxes to sum into.
+     * @param bbox   The bounding box within which to cluster
+     * @param points The points to sum.
+     */
+    public void sum(Boxes boxes, BoundingBox bbox, Collection<PointOfInterest> points) {
+        boxes.clear();
+        for (PointOfInterest point : points) {
+            addTo(boxes, bbox, point);
+        }
+    }
+
+    /**
+     * Start clustering points within the given bounding box.
+     */
+    public void begin(BoundingBox bbox) {
+        this.bbox = bbox;
+        totals.clear();
+    }
+
+    /**
+     * Add a point to its box.
+     */
+    public void add(PointOfInterest point) {
+        addTo(totals, bbox, point);
+    }
+
+    /**
+     * Add a point to its box by its coordinates.
+     *
+     * @param source The index of the point in its source, passed back to finish if the point is alone in its box.
+     */
+    public void add(double lat, double lng, int count, int source) {
+        int box = boxFor(bbox, lat, lng);
+        // Normalise to a 0-360 based version of longitude
+        totals.add(box, lat, geoFunctions.modPositive(lng + 180, 360), count);
+        if (totals.sizes[box] == 1) {
+            totals.firstSources[box] = source;
+        }
+    }
+
+    /**
+     * Add boxes that have been summed before, with the same bounding box.
+     */
+    public void add(Boxes boxes) {
+        totals.addAll(boxes);
+    }
+
+    private void addTo(Boxes boxes, BoundingBox bbox, PointOfInterest point) {
+        int count = 1;
+        if (point instanceof Cluster) {
+            // A cluster should have its lat/lng weighted by its count
+            count = ((Cluster) point).getCount();
+        }
+        LatLng position = point.getPosition();
+        int box = boxFor(bbox, position.getLat(), position.getLng());
+        // Normalise to a 0-360 based version of longitude
+        boxes.add(box, position.getLat(), geoFunctions.modPositive(position.getLng() + 180, 360), count);
+        if (boxes.sizes[box] == 1) {
+            boxes.firsts[box] = point;
+        }
+    }
+
+    private int boxFor(BoundingBox bbox, double lat, double lng) {
+        return geoFunctions.latitudeSegment(dimension, bbox.getSouthWest().getLat(), bbox.getNorthEast().getLat(),
+                lat) * dimension +
+                geoFunctions.longitudeSegment(dimension, bbox.getSouthWest().getLng(), bbox.getNorthEast().getLng(),
+                        lng);
+    }
+
+    /**
+     * Finish clustering, computing the average position of each box that has more than one point in it.
+     *
+     * @param id The id of the region
+     * @return The clustered points
+     */
+    public List<PointOfInterest> finish(String id) {
+        return finish(id, null);
+    }
+
+    /**
+     * Finish clustering, computing the average position of each box that has more than one point in it.
+     *
+     * @param id      The id of the region
+     * @param sources Looks up the points that were added by their coordinates, by their source index.
+     * @return The clustered points
+     */
+    public List<PointOfInterest> finish(String id, IntFunction<PointOfInterest> sources) {
+        if (!id.equals(lastId)) {
+            Arrays.fill(clusterIds, null);
+            lastId = id;
+        }
+        long timestamp = System.currentTimeMillis();
+        List<PointOfInterest> clusters = new ArrayList<>();
+        for (int box = 0; box < totals.sizes.length; box++) {
+            if (totals.sizes[box] == 1) {
+                PointOfInterest first = totals.firsts[box];
+                clusters.add(first != null ? first : sources.apply(totals.firstSources[box]));
+            } else if (totals.sizes[box] > 1) {
+                if (clusterIds[box] == null) {
+                    clusterIds[box] = id + "-" + box;
+                }
+                int count = totals.counts[box];
+                clusters.add(new Cluster(clusterIds[box], timestamp,
+                        new LatLng(totals.latitudes[box] / count, (totals.longitudes[box] / count) - 180), count));
+            }
+        }
+        Arrays.fill(totals.firsts, null);
+        return clusters;
+    }
+}
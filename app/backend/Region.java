@@ -3,83 +3,253 @@ package backend;
 import akka.actor.*;
 import akka.contrib.pattern.DistributedPubSubExtension;
 import akka.contrib.pattern.DistributedPubSubMediator.Publish;
-import scala.concurrent.duration.Deadline;
+import akka.contrib.pattern.ShardRegion;
+import backend.RegionManagerProtocol.RegionLoad;
+import backend.RegionManagerProtocol.RegionSplit;
+import backend.RegionManagerProtocol.RequestSnapshot;
 import models.backend.*;
 import models.backend.PointOfInterest.*;
 
-import play.libs.F.Tuple;
-
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * These sit at the lowest level, and hold all the users in that region, and publish their summaries up.
- * User position updates are published to subscribers of the topic with the region id.
+ * User position updates are published to subscribers of the topic with the region id, batched over the publish
+ * window, so that a crowd moving costs one mediator message per window rather than one per move.  The windows are
+ * ticked by the node wide ticks, like the summaries, so regions don't each start a timer per window.
+ *
+ * When regions are cluster sharded, they're named after the key of their region id, they send their summaries to
+ * the region manager of their node, and they're passivated rather than stopped.
+ *
+ * A region with more active users than the split threshold splits into four child regions, one level deeper, as
+ * long as it's not already at the split depth.  The split is published to every node, so that new positions in the
+ * region are sent to the child regions, and renewed every tick.  The child regions publish to the topic of the
+ * region at the max zoom depth that they're in, so subscribers are none the wiser, and they report their load to
+ * the region they were split from every tick.  When the load of all its children drops below the merge threshold,
+ * the region merges them back, and takes new positions again.  A region drops the users it holds once new positions
+ * go to another region, so that the users aren't summarised by both until they expire.
  */
 public class Region extends UntypedActor {
 
     public static Props props(RegionId regionId) {
-        return Props.create(Region.class, () -> new Region(regionId));
+        return Props.create(Region.class, () -> new Region(regionId)).withDispatcher(CoalescingMailbox.DISPATCHER);
+    }
+
+    /**
+     * The props of cluster sharded regions.
+     */
+    public static Props shardedProps() {
+        return Props.create(Region.class, () -> new Region(null, true)).withDispatcher(CoalescingMailbox.DISPATCHER);
     }
 
     private static final Object TICK = new Object();
+    private static final Object PUBLISH = new Object();
 
     private final ActorRef mediator = DistributedPubSubExtension.get(getContext().system()).mediator();
     private final SettingsImpl settings = Settings.SettingsProvider.get(getContext().system());
+    private final StageMetrics metrics = Metrics.MetricsProvider.get(getContext().system()).Region;
 
+    private final boolean sharded;
     private final RegionId regionId;
     private final BoundingBox regionBounds;
+    private final PointClusterer clusterer = settings.GeoFunctions.clusterer();
+    private final RegionPointsTracker tracker;
+
+    /**
+     * The region whose topic positions in this region are published to, and the topic.
+     */
+    private final RegionId topicRegionId;
+    private final String topic;
+
+    /**
+     * Whether this region is split into child regions.
+     */
+    private boolean split;
+
+    /**
+     * The System.nanoTime() this region last split at.
+     */
+    private long splitAt;
+
+    /**
+     * The last load reported by each child region, and when it was reported.
+     */
+    private final Map<RegionId, Integer> childLoads = new HashMap<>();
+    private final Map<RegionId, Long> childReported = new HashMap<>();
+
+    /**
+     * The latest position of each user that has moved since the last publish, by user id.
+     */
+    private final Map<String, UserPosition> unpublished = new LinkedHashMap<>();
 
     public Region(RegionId regionId) {
-        this.regionId = regionId;
+        this(regionId, false);
+    }
+
+    private Region(RegionId regionId, boolean sharded) {
+        this.sharded = sharded;
+        this.regionId = sharded ? RegionId.fromKey(Long.parseLong(self().path().name())) : regionId;
+
+        this.regionBounds = settings.GeoFunctions.boundingBoxForRegion(this.regionId);
+        this.tracker = new RegionPointsTracker(this.regionId, settings.SummarySnapshotInterval);
+        this.topicRegionId = settings.GeoFunctions.topicRegionForRegion(this.regionId);
+        this.topic = topicRegionId.getName();
 
-        this.regionBounds = settings.GeoFunctions.boundingBoxForRegion(regionId);
+        // A region that was split before it was last stopped, or before its node went, is still split
+        this.split = settings.GeoFunctions.isSplit(this.regionId);
+        this.splitAt = System.nanoTime();
     }
 
     /**
-     * The active points for this region, keyed by region id.
-     *
-     * The values are the points for the region, tupled with the deadline they are valid until.
+     * The active users for this region, with the time they are valid until.
      */
-    private final Map<String, Tuple<UserPosition, Deadline>> activeUsers = new HashMap<>();
+    private final UserPositionStore activeUsers = new UserPositionStore(settings.SummaryInterval);
 
-    private final Cancellable tickTask = getContext().system().scheduler().schedule(settings.SummaryInterval.$div(2),
-            settings.SummaryInterval, self(), TICK, getContext().dispatcher(), self());
+    private final TicksImpl ticks = Ticks.TicksProvider.get(getContext().system());
+
+    private final Cancellable tickTask = ticks.schedule(settings.SummaryInterval, self(), TICK);
+
+    /**
+     * Publishes what has arrived every publish window, from the ticks of the node rather than a timer per window.
+     */
+    private final Cancellable publishTask = settings.PublishWindow.toMillis() == 0 ? null :
+            ticks.schedule(settings.PublishWindow, self(), PUBLISH);
 
     public void postStop() throws Exception {
         tickTask.cancel();
+        if (publishTask != null) {
+            publishTask.cancel();
+        }
+        publish();
     }
 
     public void onReceive(Object msg) throws Exception {
         if (msg instanceof UserPosition) {
             UserPosition pos = (UserPosition) msg;
+            metrics.record(pos.getTimestamp());
 
-            activeUsers.put(pos.getId(), new Tuple<>(pos, Deadline.now().$plus(settings.ExpiryInterval)));
+            activeUsers.update(pos, System.nanoTime() + settings.ExpiryInterval.toNanos());
             // publish new user position to subscribers
-            mediator.tell(new Publish(regionId.getName(), pos), self());
+            if (settings.PublishWindow.toMillis() == 0) {
+                mediator.tell(new Publish(topic, pos), self());
+            } else {
+                unpublished.put(pos.getId(), pos);
+            }
+
+        } else if (msg == PUBLISH) {
+            publish();
+
+        } else if (msg instanceof RequestSnapshot) {
+            // sent the same way as deltas, so it can't overtake them
+            tellManager(tracker.snapshot());
+
+        } else if (msg instanceof RegionLoad) {
+            RegionLoad load = (RegionLoad) msg;
+            childLoads.put(load.getRegionId(), load.getLoad());
+            childReported.put(load.getRegionId(), System.nanoTime());
 
         } else if (msg == TICK) {
             // expire inactive users
-            Set<String> expired = activeUsers.entrySet().stream()
-                    .filter(user -> user.getValue()._2.isOverdue())
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toSet());
-            expired.forEach(activeUsers::remove);
+            activeUsers.expire(System.nanoTime());
+
+            // Once split, the child regions hold the users, and once merged, the region split from does, so drop
+            // them here rather than summarising them twice until they expire
+            if (!holdsPositions()) {
+                activeUsers.clear();
+            }
 
             // Cluster
-            RegionPoints points = new RegionPoints(regionId, settings.GeoFunctions.cluster(regionId.getName(),
-                    regionBounds, activeUsers.values().stream().map(u -> u._1).collect(Collectors.toList())));
+            List<PointOfInterest> points = activeUsers.cluster(clusterer, regionId.getName(), regionBounds);
 
-            // propagate the points to the summary region via the parent manager
-            getContext().parent().tell(points, self());
+            // propagate the changed points to the summary region via the parent manager
+            tracker.delta(points).ifPresent(this::tellManager);
 
-            // stop the actor when no active users
-            if (activeUsers.isEmpty()) {
-                getContext().stop(self());
+            int load = split ? childLoad() : activeUsers.size();
+            if (regionId.getZoomLevel() > settings.MaxZoomDepth) {
+                tellManager(new RegionLoad(regionId, load));
             }
+            splitOrMerge(load);
+
+            // stop the actor when no active users, unless it has children to look after
+            if (activeUsers.isEmpty() && !split) {
+                if (sharded) {
+                    getContext().parent().tell(new ShardRegion.Passivate(PoisonPill.getInstance()), self());
+                } else {
+                    getContext().stop(self());
+                }
+            }
+        }
+    }
+
+    /**
+     * Publish the positions that have arrived in the current publish window.
+     */
+    private void publish() {
+        if (!unpublished.isEmpty()) {
+            mediator.tell(new Publish(topic, new RegionPositions(topicRegionId, unpublished.values())), self());
+            unpublished.clear();
+        }
+    }
+
+    /**
+     * Send a message to the region manager, which sends it on to the right node.
+     */
+    private void tellManager(Object msg) {
+        if (sharded) {
+            getContext().actorSelection("/user/regionManager").tell(msg, self());
+        } else {
+            getContext().parent().tell(msg, self());
         }
     }
 
+    /**
+     * Whether new positions in this region are sent to it, rather than to child regions it's split into, or to the
+     * region it was split from, once that has merged it back.
+     */
+    private boolean holdsPositions() {
+        GeoFunctions geoFunctions = settings.GeoFunctions;
+        return !geoFunctions.isSplit(regionId) && (regionId.getZoomLevel() <= settings.MaxZoomDepth ||
+                geoFunctions.isSplit(geoFunctions.ancestorOfRegion(regionId, regionId.getZoomLevel() - 1)));
+    }
+
+    /**
+     * The load of all the child regions, forgetting those that haven't reported for a few ticks, since they've
+     * stopped.
+     */
+    private int childLoad() {
+        long expired = System.nanoTime() - settings.SummaryInterval.toNanos() * 3;
+        childReported.entrySet().removeIf(entry -> {
+            if (entry.getValue() - expired < 0) {
+                childLoads.remove(entry.getKey());
+                return true;
+            } else {
+                return false;
+            }
+        });
+        return childLoads.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Split, renew the split, or merge, depending on the load.
+     */
+    private void splitOrMerge(int load) {
+        if (split) {
+            // Give the children a lease's time to report before deciding they're quiet
+            if (load < settings.RegionMergeThreshold &&
+                    System.nanoTime() - splitAt > settings.RegionSplitLease.toNanos()) {
+                split = false;
+                childLoads.clear();
+                childReported.clear();
+            }
+            mediator.tell(new Publish(RegionSplitsReplicator.TOPIC, new RegionSplit(regionId, split)), self());
+        } else if (load > settings.RegionSplitThreshold &&
+                regionId.getZoomLevel() < settings.MaxZoomDepth + settings.RegionSplitDepth) {
+            split = true;
+            splitAt = System.nanoTime();
+            mediator.tell(new Publish(RegionSplitsReplicator.TOPIC, new RegionSplit(regionId, true)), self());
+        }
+    }
 }
@@ -4,15 +4,19 @@ import akka.actor.*;
 import akka.routing.FromConfig;
 import backend.RegionManagerProtocol.*;
 import models.backend.RegionId;
-import models.backend.RegionPoints;
-import scala.Option;
+import models.backend.RegionPointsDelta;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Function;
 
 /**
  * Handles instantiating region and summary region actors when data arrives for them, if they don't already exist.
- * It also routes the `RegionPoints` from child `Region` or `SummaryRegion` to the node
+ * It also routes the `RegionPointsDelta` from child `Region` or `SummaryRegion` to the node
  * responsible for the target region.
+ *
+ * The load that regions split below the max zoom depth report is routed the same way, to the node responsible for
+ * the region they were split from.
  */
 public class RegionManager extends UntypedActor {
 
@@ -24,42 +28,95 @@ public class RegionManager extends UntypedActor {
             getContext().actorOf(Props.empty().withRouter(FromConfig.getInstance()), "router");
     private final SettingsImpl settings = Settings.SettingsProvider.get(getContext().system());
 
+    /**
+     * The sharding of regions, if regions are sharded.
+     */
+    private final RegionShardingImpl sharding = settings.ShardingEnabled ?
+            RegionSharding.RegionShardingProvider.get(getContext().system()) : null;
+
+    /**
+     * Routes to the nodes responsible for regions, rather than summary regions, if regions aren't sharded.
+     */
+    private final ActorRef regionRouter = sharding == null ?
+            getContext().actorOf(Props.empty().withRouter(FromConfig.getInstance()), "regionRouter") : null;
+    private final StageMetrics metrics = Metrics.MetricsProvider.get(getContext().system()).RegionManager;
+
+    /**
+     * The child region actors, keyed by region key, so that looking them up doesn't need the region name.
+     */
+    private final Map<Long, ActorRef> regions = new HashMap<>();
+    private final Map<ActorRef, Long> regionKeys = new HashMap<>();
 
     public void onReceive(Object msg) throws Exception {
         if (msg instanceof UpdateUserPosition) {
-            UpdateUserPosition update = (UpdateUserPosition) msg;
-
-            ActorRef region = getRegionActor(update.getRegionId(), Region::props);
+            updateUserPosition((UpdateUserPosition) msg);
 
-            region.tell(update.getUserPosition(), self());
+        } else if (msg instanceof UpdateUserPositions) {
+            // a batch for this node, fan it out to the regions
+            ((UpdateUserPositions) msg).getUpdates().forEach(this::updateUserPosition);
 
         } else if (msg instanceof UpdateRegionPoints) {
             UpdateRegionPoints update = (UpdateRegionPoints) msg;
 
             ActorRef region = getRegionActor(update.getRegionId(), SummaryRegion::props);
 
-            region.tell(update.getRegionPoints(), self());
+            // keep the sending region as the sender, so the summary region can ask it for a snapshot
+            region.tell(update.getRegionPointsDelta(), getSender());
 
-        } else if (msg instanceof RegionPoints) {
-            RegionPoints points = (RegionPoints) msg;
+        } else if (msg instanceof RegionPointsDelta) {
+            RegionPointsDelta delta = (RegionPointsDelta) msg;
 
-            // count reported by child region, propagate it to summary region on responsible node
-            settings.GeoFunctions.summaryRegionForRegion(points.getRegionId()).ifPresent(summaryRegionId ->
-                    regionManagerRouter.tell(new UpdateRegionPoints(summaryRegionId, points), self())
+            // changes reported by child region, propagate them to summary region on responsible node
+            settings.GeoFunctions.summaryRegionForRegion(delta.getRegionId()).ifPresent(summaryRegionId ->
+                    regionManagerRouter.tell(new UpdateRegionPoints(summaryRegionId, delta), getSender())
             );
+
+        } else if (msg instanceof RegionLoad) {
+            RegionLoad load = (RegionLoad) msg;
+
+            // load reported by a split child region, send it to the region it was split from
+            RegionId splitRegionId = settings.GeoFunctions.ancestorOfRegion(load.getRegionId(),
+                    load.getRegionId().getZoomLevel() - 1);
+            UpdateRegionLoad update = new UpdateRegionLoad(splitRegionId, load);
+            if (sharding != null) {
+                sharding.tell(update, self());
+            } else {
+                regionRouter.tell(update, self());
+            }
+
+        } else if (msg instanceof UpdateRegionLoad) {
+            UpdateRegionLoad update = (UpdateRegionLoad) msg;
+
+            getRegionActor(update.getRegionId(), Region::props).tell(update.getRegionLoad(), self());
+
+        } else if (msg instanceof Terminated) {
+            // a region has stopped, once it had no more active points
+            Long key = regionKeys.remove(((Terminated) msg).actor());
+            if (key != null) {
+                regions.remove(key);
+            }
         }
     }
 
+    private void updateUserPosition(UpdateUserPosition update) {
+        metrics.record(update.getUserPosition().getTimestamp());
+        ActorRef region = getRegionActor(update.getRegionId(), Region::props);
+
+        region.tell(update.getUserPosition(), self());
+    }
+
     /**
      * Get the actor for the given region, creating it if it doesn't already exist.
      */
     private ActorRef getRegionActor(RegionId regionId, Function<RegionId, Props> props) {
-        Option<ActorRef> maybeChild = context().child(regionId.getName());
+        ActorRef region = regions.get(regionId.getKey());
 
-        if (maybeChild.isDefined()) {
-            return maybeChild.get();
-        } else {
-            return getContext().actorOf(props.apply(regionId), regionId.getName());
+        if (region == null) {
+            region = getContext().actorOf(props.apply(regionId), regionId.getName());
+            getContext().watch(region);
+            regions.put(regionId.getKey(), region);
+            regionKeys.put(region, regionId.getKey());
         }
+        return region;
     }
 }
\ No newline at end of file
@@ -1,9 +1,14 @@
 package backend;
 
 import akka.routing.ConsistentHashingRouter.ConsistentHashable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Longs;
 import models.backend.PointOfInterest;
 import models.backend.RegionId;
-import models.backend.RegionPoints;
+import models.backend.RegionPointsDelta;
+
+import java.util.Collection;
+import java.util.List;
 
 public abstract class RegionManagerProtocol {
 
@@ -35,7 +40,24 @@ public abstract class RegionManagerProtocol {
         }
 
         public Object consistentHashKey() {
-            return regionId.getName();
+            return hashKey(regionId);
+        }
+    }
+
+    /**
+     * Update the positions of many users, in any region handled by the receiving node.
+     *
+     * Sent by clients of the backend that batch their position updates per backend node.
+     */
+    public static class UpdateUserPositions {
+        private final List<UpdateUserPosition> updates;
+
+        public UpdateUserPositions(Collection<UpdateUserPosition> updates) {
+            this.updates = ImmutableList.copyOf(updates);
+        }
+
+        public List<UpdateUserPosition> getUpdates() {
+            return updates;
         }
     }
 
@@ -46,30 +68,134 @@ public abstract class RegionManagerProtocol {
      */
     public static class UpdateRegionPoints implements ConsistentHashable {
         private final RegionId regionId;
-        private final RegionPoints regionPoints;
+        private final RegionPointsDelta regionPointsDelta;
 
         /**
          * @param regionId The region id that position is in.  This is used as the hash key for deciding which node
          *                 to route the update to.
-         * @param regionPoints The points to update.
+         * @param regionPointsDelta The changes to the points of the child region.
          */
-        public UpdateRegionPoints(RegionId regionId, RegionPoints regionPoints) {
+        public UpdateRegionPoints(RegionId regionId, RegionPointsDelta regionPointsDelta) {
             this.regionId = regionId;
-            this.regionPoints = regionPoints;
+            this.regionPointsDelta = regionPointsDelta;
         }
 
         public RegionId getRegionId() {
             return regionId;
         }
 
-        public RegionPoints getRegionPoints() {
-            return regionPoints;
+        public RegionPointsDelta getRegionPointsDelta() {
+            return regionPointsDelta;
         }
 
         public Object consistentHashKey() {
-            return regionId.getName();
+            return hashKey(regionId);
         }
     }
 
+    /**
+     * The load of a region below the max zoom depth, the number of active users in it and its descendants.
+     *
+     * Sent by split child regions to the region manager of their node, to pass on to the region they were split from.
+     */
+    public static class RegionLoad {
+        private final RegionId regionId;
+        private final int load;
+
+        public RegionLoad(RegionId regionId, int load) {
+            this.regionId = regionId;
+            this.load = load;
+        }
+
+        public RegionId getRegionId() {
+            return regionId;
+        }
+
+        public int getLoad() {
+            return load;
+        }
+    }
+
+    /**
+     * Update the load of a child region at the split region it was split from.
+     */
+    public static class UpdateRegionLoad implements ConsistentHashable {
+        private final RegionId regionId;
+        private final RegionLoad regionLoad;
+
+        /**
+         * @param regionId   The split region.  This is used as the hash key for deciding which node to route the
+         *                   update to.
+         * @param regionLoad The load of the child region.
+         */
+        public UpdateRegionLoad(RegionId regionId, RegionLoad regionLoad) {
+            this.regionId = regionId;
+            this.regionLoad = regionLoad;
+        }
+
+        public RegionId getRegionId() {
+            return regionId;
+        }
+
+        public RegionLoad getRegionLoad() {
+            return regionLoad;
+        }
 
+        public Object consistentHashKey() {
+            return hashKey(regionId);
+        }
+    }
+
+    /**
+     * A region has split into child regions, or merged them back.
+     *
+     * Published by split regions to every node, and renewed every summary interval for as long as the split lasts.
+     */
+    public static class RegionSplit {
+        private final RegionId regionId;
+        private final boolean split;
+
+        public RegionSplit(RegionId regionId, boolean split) {
+            this.regionId = regionId;
+            this.split = split;
+        }
+
+        public RegionId getRegionId() {
+            return regionId;
+        }
+
+        public boolean isSplit() {
+            return split;
+        }
+    }
+
+    /**
+     * Ask a region for a snapshot of its points.
+     *
+     * Sent by summary regions to the sender of a delta, when the delta shows that they've missed some, or that they
+     * haven't heard from the region before, so that they don't have to wait for the next scheduled snapshot.
+     */
+    public static class RequestSnapshot {
+        private final RegionId regionId;
+
+        /**
+         * @param regionId The region whose snapshot is wanted.
+         */
+        public RequestSnapshot(RegionId regionId) {
+            this.regionId = regionId;
+        }
+
+        public RegionId getRegionId() {
+            return regionId;
+        }
+    }
+
+    /**
+     * The consistent hash key for a region, the bytes of its packed key.
+     *
+     * The router hashes byte arrays directly, without going through serialization or building the region name.
+     */
+    private static byte[] hashKey(RegionId regionId) {
+        return Longs.toByteArray(regionId.getKey());
+    }
 }
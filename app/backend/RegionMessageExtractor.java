@@ -0,0 +1,54 @@
+package backend;
+
+import akka.contrib.pattern.ShardRegion;
+import backend.RegionManagerProtocol.UpdateRegionLoad;
+import backend.RegionManagerProtocol.UpdateUserPosition;
+import models.backend.RegionId;
+
+/**
+ * Extracts the region entity and shard of position updates, and of the load of split regions, for regions that are
+ * cluster sharded.
+ *
+ * Regions are named after the key of their region id, and the keys are spread over a fixed number of shards.
+ */
+public class RegionMessageExtractor implements ShardRegion.MessageExtractor {
+
+    private final int numberOfShards;
+
+    public RegionMessageExtractor(int numberOfShards) {
+        this.numberOfShards = numberOfShards;
+    }
+
+    public String entryId(Object message) {
+        RegionId regionId = regionId(message);
+        return regionId == null ? null : Long.toString(regionId.getKey());
+    }
+
+    public Object entryMessage(Object message) {
+        if (message instanceof UpdateUserPosition) {
+            return ((UpdateUserPosition) message).getUserPosition();
+        } else if (message instanceof UpdateRegionLoad) {
+            return ((UpdateRegionLoad) message).getRegionLoad();
+        } else {
+            return message;
+        }
+    }
+
+    public String shardId(Object message) {
+        RegionId regionId = regionId(message);
+        if (regionId == null) {
+            return null;
+        }
+        return Integer.toString(Math.floorMod(Long.hashCode(regionId.getKey()), numberOfShards));
+    }
+
+    private RegionId regionId(Object message) {
+        if (message instanceof UpdateUserPosition) {
+            return ((UpdateUserPosition) message).getRegionId();
+        } else if (message instanceof UpdateRegionLoad) {
+            return ((UpdateRegionLoad) message).getRegionId();
+        } else {
+            return null;
+        }
+    }
+}
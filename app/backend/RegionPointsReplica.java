@@ -0,0 +1,73 @@
+package backend;
+
+import models.backend.*;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A summary region's copy of the points of one of its sub regions, kept up to date by applying deltas.
+ *
+ * When a delta is missed, or the first delta from the sub region isn't a snapshot, the replica keeps the points it
+ * has and ignores further deltas until the next snapshot, which it should ask the sub region for.
+ */
+public class RegionPointsReplica {
+
+    private final Map<String, PointOfInterest> points = new LinkedHashMap<>();
+
+    private long sequenceNr = 0;
+
+    private boolean stale = true;
+
+    /**
+     * Whether a snapshot has been asked for since the replica went stale.
+     */
+    private boolean snapshotRequested = false;
+
+    /**
+     * Apply the given delta.
+     *
+     * @return Whether the points have changed.
+     */
+    public boolean apply(RegionPointsDelta delta) {
+        if (delta.isSnapshot()) {
+            points.clear();
+            delta.getUpdated().forEach(point -> points.put(point.getId(), point));
+            stale = false;
+            snapshotRequested = false;
+        } else if (!stale && delta.getSequenceNr() == sequenceNr + 1) {
+            delta.getRemoved().forEach(points::remove);
+            delta.getUpdated().forEach(point -> points.put(point.getId(), point));
+        } else {
+            stale = true;
+            return false;
+        }
+        sequenceNr = delta.getSequenceNr();
+        return true;
+    }
+
+    /**
+     * Whether a delta has been missed since the last snapshot.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Whether the sub region should be asked for a snapshot now.  True once each time the replica goes stale, so
+     * that the deltas that keep arriving until the snapshot does don't ask again.
+     */
+    public boolean shouldRequestSnapshot() {
+        if (stale && !snapshotRequested) {
+            snapshotRequested = true;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public Collection<PointOfInterest> getPoints() {
+        return points.values();
+    }
+}
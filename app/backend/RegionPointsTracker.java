@@ -0,0 +1,116 @@
+package backend;
+
+import models.backend.*;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.*;
+
+/**
+ * Tracks the points a region last sent to its summary region, to send only what has changed since.
+ *
+ * A snapshot of all the points is sent at the snapshot interval, which lets a summary region that missed a delta
+ * recover, and keeps a region that has nothing new to say from expiring.  A summary region that can't wait for it
+ * asks for a snapshot instead.
+ */
+public class RegionPointsTracker {
+
+    private final RegionId regionId;
+    private final long snapshotInterval;
+
+    /**
+     * The points last sent, keyed by id, with the delta they were last seen in.
+     */
+    private final Map<String, Sent> sent = new HashMap<>();
+
+    private long sequenceNr = 0;
+
+    /**
+     * The number of deltas worked out so far, which marks the points seen in the current delta.
+     */
+    private long generation = 0;
+
+    /**
+     * The System.nanoTime() at which the next snapshot is due.
+     */
+    private long nextSnapshot = System.nanoTime();
+
+    /**
+     * @param regionId         The region the points are in.
+     * @param snapshotInterval The interval at which to send a snapshot.  Must be less than the expiry interval.
+     */
+    public RegionPointsTracker(RegionId regionId, FiniteDuration snapshotInterval) {
+        this.regionId = regionId;
+        this.snapshotInterval = snapshotInterval.toNanos();
+    }
+
+    private static class Sent {
+        private PointOfInterest point;
+        private long generation;
+    }
+
+    /**
+     * Get the delta from the points last sent to the given points.
+     *
+     * The points are compared against those last sent in place, so when nothing has changed, nothing but the
+     * iteration is allocated.
+     *
+     * @param points The current points of the region, with distinct ids.
+     * @return The delta to send, or nothing if nothing has changed and no snapshot is due.
+     */
+    public Optional<RegionPointsDelta> delta(Collection<PointOfInterest> points) {
+        long now = System.nanoTime();
+        generation++;
+
+        List<PointOfInterest> updated = Collections.emptyList();
+        for (PointOfInterest point : points) {
+            Sent last = sent.get(point.getId());
+            if (last == null) {
+                last = new Sent();
+                sent.put(point.getId(), last);
+            }
+            if (!point.isSameAs(last.point)) {
+                if (updated.isEmpty()) {
+                    updated = new ArrayList<>();
+                }
+                updated.add(point);
+                last.point = point;
+            }
+            last.generation = generation;
+        }
+
+        List<String> removed = Collections.emptyList();
+        if (sent.size() > points.size()) {
+            List<String> gone = new ArrayList<>(sent.size() - points.size());
+            sent.entrySet().removeIf(entry -> {
+                if (entry.getValue().generation != generation) {
+                    gone.add(entry.getKey());
+                    return true;
+                } else {
+                    return false;
+                }
+            });
+            removed = gone;
+        }
+
+        if (now - nextSnapshot >= 0) {
+            nextSnapshot = now + snapshotInterval;
+            return Optional.of(new RegionPointsDelta(regionId, ++sequenceNr, true, points,
+                    Collections.emptyList()));
+        } else if (updated.isEmpty() && removed.isEmpty()) {
+            return Optional.empty();
+        } else {
+            return Optional.of(new RegionPointsDelta(regionId, ++sequenceNr, false, updated, removed));
+        }
+    }
+
+    /**
+     * Get a snapshot of the points last sent, for a summary region that asked for one.  It takes the place of the
+     * next scheduled snapshot.
+     */
+    public RegionPointsDelta snapshot() {
+        List<PointOfInterest> points = new ArrayList<>(sent.size());
+        sent.values().forEach(last -> points.add(last.point));
+        nextSnapshot = System.nanoTime() + snapshotInterval;
+        return new RegionPointsDelta(regionId, ++sequenceNr, true, points, Collections.emptyList());
+    }
+}
@@ -0,0 +1,21 @@
+package backend;
+
+import akka.actor.*;
+
+/**
+ * The cluster sharding of regions, for when regions are placed by their load.
+ */
+public class RegionSharding extends AbstractExtensionId<RegionShardingImpl>
+        implements ExtensionIdProvider {
+    public final static RegionSharding RegionShardingProvider = new RegionSharding();
+
+    private RegionSharding() {}
+
+    public RegionSharding lookup() {
+        return RegionSharding.RegionShardingProvider;
+    }
+
+    public RegionShardingImpl createExtension(ExtendedActorSystem system) {
+        return new RegionShardingImpl(system);
+    }
+}
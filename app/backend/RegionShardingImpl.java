@@ -0,0 +1,88 @@
+package backend;
+
+import akka.actor.ActorPath;
+import akka.actor.ActorRef;
+import akka.actor.Address;
+import akka.actor.AddressFromURIString;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.Props;
+import akka.actor.RootActorPath;
+import akka.cluster.Cluster;
+import akka.contrib.pattern.ClusterSharding;
+import akka.persistence.journal.leveldb.SharedLeveldbStore;
+import backend.RegionManagerProtocol.UpdateUserPosition;
+
+public class RegionShardingImpl implements Extension {
+
+    RegionShardingImpl(ExtendedActorSystem system) {
+        SettingsImpl settings = Settings.SettingsProvider.get(system);
+        this.Loads = new ShardLoads();
+        this.extractor = new RegionMessageExtractor(settings.ShardingNumberOfShards);
+        this.metrics = Metrics.MetricsProvider.get(system).RegionManager;
+        connectJournal(system, settings);
+
+        // Only nodes with the sharding role host regions, the others just route to them
+        String role = system.settings().config().getString("akka.contrib.cluster.sharding.role");
+        boolean host = role.isEmpty() || Cluster.get(system).getSelfRoles().contains(role);
+
+        this.Regions = ClusterSharding.get(system).start("regions", host ? Region.shardedProps() : null,
+                extractor,
+                new LoadAwareAllocationStrategy(Loads, settings.ShardingRebalanceThreshold));
+        system.systemActorOf(ShardLoadReporter.props(Loads), "shardLoadReporter");
+    }
+
+    /**
+     * The shard coordinator persists the shard allocations, and it moves between nodes, so its journal must be shared
+     * by all the nodes.  Otherwise a coordinator taking over would recover no or stale allocations while the shards
+     * are still hosted, and could start a second region for the same key.
+     */
+    private static void connectJournal(ExtendedActorSystem system, SettingsImpl settings) {
+        String plugin = system.settings().config().getString("akka.persistence.journal.plugin");
+        if (plugin.equals("akka.persistence.journal.leveldb")) {
+            throw new IllegalStateException("Regions can't be sharded with the journal local to each node, " +
+                    "configure a journal shared by all the nodes as akka.persistence.journal.plugin");
+        } else if (plugin.equals("akka.persistence.journal.leveldb-shared")) {
+            Address storeNode = AddressFromURIString.parse(settings.ShardingJournalStoreNode);
+            if (storeNode.equals(Cluster.get(system).selfAddress())) {
+                system.actorOf(Props.create(SharedLeveldbStore.class), SharedJournalConnector.STORE);
+            }
+            ActorPath store = new RootActorPath(storeNode, "/").$div("user").$div(SharedJournalConnector.STORE);
+            system.systemActorOf(SharedJournalConnector.props(store), "sharedJournalConnector");
+        }
+    }
+
+    private final RegionMessageExtractor extractor;
+    private final StageMetrics metrics;
+
+    /**
+     * Send a message to its region through the shard region of this node, counting it towards the load of its shard.
+     *
+     * Messages are counted here, once, by the node that sends them, rather than wherever the shard region resolves
+     * their shard, which it may do more than once for the same message.
+     *
+     * Positions sent here skip the region manager, so they're recorded in its stage here instead, as they enter the
+     * backend.
+     */
+    public void tell(Object message, ActorRef sender) {
+        if (message instanceof UpdateUserPosition) {
+            metrics.record(((UpdateUserPosition) message).getUserPosition().getTimestamp());
+        }
+        String shardId = extractor.shardId(message);
+        if (shardId != null) {
+            Loads.count(shardId);
+        }
+        Regions.tell(message, sender);
+    }
+
+  /**
+   * The shard region of this node, which takes the same UpdateUserPosition messages as the region manager.  Send
+   * to it with tell, so that the messages are counted in the load of their shards.
+   */
+  public final ActorRef Regions;
+
+  /**
+   * The load of the region shards.
+   */
+  public final ShardLoads Loads;
+}
@@ -0,0 +1,35 @@
+package backend;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+public abstract class RegionShardingProtocol {
+
+    /**
+     * The load of the region shards, as seen by one node.
+     *
+     * Published by every node, so that the node running the shard coordinator knows the load of every shard.
+     */
+    public static class ShardLoadReport {
+        private final String node;
+        private final Map<String, Double> loads;
+
+        /**
+         * @param node  The address of the node reporting.
+         * @param loads The number of messages per second the node sent to each shard.
+         */
+        public ShardLoadReport(String node, Map<String, Double> loads) {
+            this.node = node;
+            this.loads = ImmutableMap.copyOf(loads);
+        }
+
+        public String getNode() {
+            return node;
+        }
+
+        public Map<String, Double> getLoads() {
+            return loads;
+        }
+    }
+}
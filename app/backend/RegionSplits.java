@@ -0,0 +1,22 @@
+package backend;
+
+import akka.actor.*;
+
+/**
+ * The replicated map of split regions, which keeps the geo functions of this node up to date with the regions that
+ * are split across the cluster.
+ */
+public class RegionSplits extends AbstractExtensionId<RegionSplitsImpl>
+        implements ExtensionIdProvider {
+    public final static RegionSplits RegionSplitsProvider = new RegionSplits();
+
+    private RegionSplits() {}
+
+    public RegionSplits lookup() {
+        return RegionSplits.RegionSplitsProvider;
+    }
+
+    public RegionSplitsImpl createExtension(ExtendedActorSystem system) {
+        return new RegionSplitsImpl(system.systemActorOf(RegionSplitsReplicator.props(), "regionSplits"));
+    }
+}
@@ -0,0 +1,16 @@
+package backend;
+
+import akka.actor.ActorRef;
+import akka.actor.Extension;
+
+public class RegionSplitsImpl implements Extension {
+
+    RegionSplitsImpl(ActorRef replicator) {
+        this.Replicator = replicator;
+    }
+
+  /**
+   * The replicator of this node, which takes the same RegionSplit messages that split regions publish.
+   */
+  public final ActorRef Replicator;
+}
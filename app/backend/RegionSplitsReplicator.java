@@ -0,0 +1,74 @@
+package backend;
+
+import akka.actor.*;
+import akka.contrib.pattern.DistributedPubSubExtension;
+import akka.contrib.pattern.DistributedPubSubMediator.Subscribe;
+import backend.RegionManagerProtocol.RegionSplit;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replicates the split regions to this node.
+ *
+ * Split regions publish their splits to every node, and renew them every summary interval.  Each split is held as a
+ * lease, so the split of a region that has gone without merging, along with its node, lapses by itself.  Whenever the
+ * split regions change, the geo functions of this node are given the new set.
+ */
+public class RegionSplitsReplicator extends UntypedActor {
+
+    public static Props props() {
+        return Props.create(RegionSplitsReplicator.class, RegionSplitsReplicator::new);
+    }
+
+    /**
+     * The topic that split regions publish their splits to.
+     */
+    public static final String TOPIC = "regionSplits";
+
+    private static final Object TICK = new Object();
+
+    private final SettingsImpl settings = Settings.SettingsProvider.get(getContext().system());
+    private final ActorRef mediator = DistributedPubSubExtension.get(getContext().system()).mediator();
+
+    /**
+     * The System.nanoTime() that the lease of each split region, by key, runs out at.
+     */
+    private final Map<Long, Long> leases = new HashMap<>();
+
+    private final Cancellable tickTask = getContext().system().scheduler().schedule(settings.RegionSplitLease.$div(2),
+            settings.RegionSplitLease.$div(2), self(), TICK, getContext().dispatcher(), self());
+
+    public void preStart() throws Exception {
+        mediator.tell(new Subscribe(TOPIC, self()), self());
+    }
+
+    public void postStop() throws Exception {
+        tickTask.cancel();
+    }
+
+    public void onReceive(Object msg) throws Exception {
+        if (msg instanceof RegionSplit) {
+            RegionSplit split = (RegionSplit) msg;
+            long key = split.getRegionId().getKey();
+            if (split.isSplit()) {
+                if (leases.put(key, System.nanoTime() + settings.RegionSplitLease.toNanos()) == null) {
+                    update();
+                }
+            } else if (leases.remove(key) != null) {
+                update();
+            }
+
+        } else if (msg == TICK) {
+            long now = System.nanoTime();
+            if (leases.values().removeIf(expiry -> expiry - now < 0)) {
+                update();
+            }
+        }
+    }
+
+    private void update() {
+        settings.GeoFunctions.setSplitRegions(ImmutableSet.copyOf(leases.keySet()));
+    }
+}
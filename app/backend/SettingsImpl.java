@@ -16,10 +16,39 @@ public class SettingsImpl implements Extension {
         this.ClusterDimension = config.getInt("reactiveMaps.clusterDimension");
         this.SummaryInterval = Duration.apply(config.getMilliseconds("reactiveMaps.summaryInterval"), TimeUnit.MILLISECONDS);
         this.ExpiryInterval = Duration.apply(config.getMilliseconds("reactiveMaps.expiryInterval"), TimeUnit.MILLISECONDS);
+        this.SummarySnapshotInterval = Duration.apply(config.getMilliseconds("reactiveMaps.summarySnapshotInterval"), TimeUnit.MILLISECONDS);
+        this.PublishWindow = Duration.apply(config.getMilliseconds("reactiveMaps.publishWindow"), TimeUnit.MILLISECONDS);
         this.SubscriberBatchInterval = Duration.apply(config.getMilliseconds("reactiveMaps.subscriberBatchInterval"), TimeUnit.MILLISECONDS);
+        this.SubscriberMinBatchInterval = Duration.apply(config.getMilliseconds("reactiveMaps.subscriberMinBatchInterval"), TimeUnit.MILLISECONDS);
+        this.SubscriberMaxBatchInterval = Duration.apply(config.getMilliseconds("reactiveMaps.subscriberMaxBatchInterval"), TimeUnit.MILLISECONDS);
+        this.SubscriberMaxInFlight = config.getInt("reactiveMaps.subscriberMaxInFlight");
+        this.SubscriberPointBudget = config.getInt("reactiveMaps.subscriberPointBudget");
+        this.TickBuckets = config.getInt("reactiveMaps.tickBuckets");
+        this.RegionCacheSize = config.getInt("reactiveMaps.regionCacheSize");
+        this.RegionSplitDepth = config.getInt("reactiveMaps.regionSplit.depth");
+        this.RegionSplitThreshold = config.getInt("reactiveMaps.regionSplit.splitThreshold");
+        this.RegionMergeThreshold = config.getInt("reactiveMaps.regionSplit.mergeThreshold");
+        this.RegionSplitLease = Duration.apply(config.getMilliseconds("reactiveMaps.regionSplit.lease"), TimeUnit.MILLISECONDS);
         this.GeoFunctions = new GeoFunctions(this);
+        this.PositionBatchEnabled = config.getBoolean("reactiveMaps.positionBatch.enabled");
+        this.PositionBatchInterval = Duration.apply(config.getMilliseconds("reactiveMaps.positionBatch.interval"), TimeUnit.MILLISECONDS);
+        this.PositionBatchMaxSize = config.getInt("reactiveMaps.positionBatch.maxSize");
+        this.ShardingEnabled = config.getBoolean("reactiveMaps.sharding.enabled");
+        this.ShardingNumberOfShards = config.getInt("reactiveMaps.sharding.numberOfShards");
+        this.ShardingLoadReportInterval = Duration.apply(config.getMilliseconds("reactiveMaps.sharding.loadReportInterval"), TimeUnit.MILLISECONDS);
+        this.ShardingRebalanceThreshold = config.getDouble("reactiveMaps.sharding.rebalanceThreshold");
+        this.ShardingJournalStoreNode = config.getString("reactiveMaps.sharding.journalStoreNode");
+        this.MetricsEnabled = config.getBoolean("reactiveMaps.metrics.enabled");
+        this.MetricsInterval = Duration.apply(config.getMilliseconds("reactiveMaps.metrics.interval"), TimeUnit.MILLISECONDS);
         this.BotsEnabled = config.getBoolean("reactiveMaps.bots.enabled");
         this.TotalNumberOfBots = config.getInt("reactiveMaps.bots.totalNumberOfBots");
+        this.BotsSimulated = config.getString("reactiveMaps.bots.mode").equals("simulated");
+        this.SimulationEngines = config.getInt("reactiveMaps.bots.simulation.engines");
+        this.SimulationStepInterval = Duration.apply(config.getMilliseconds("reactiveMaps.bots.simulation.stepInterval"), TimeUnit.MILLISECONDS);
+        this.SimulationUpdateInterval = Duration.apply(config.getMilliseconds("reactiveMaps.bots.simulation.updateInterval"), TimeUnit.MILLISECONDS);
+        this.SimulationViewers = config.getInt("reactiveMaps.bots.simulation.viewers");
+        this.SimulationViewportInterval = Duration.apply(config.getMilliseconds("reactiveMaps.bots.simulation.viewportInterval"), TimeUnit.MILLISECONDS);
+        this.SimulationHotSpotFraction = config.getDouble("reactiveMaps.bots.simulation.hotSpotFraction");
     }
 
   /**
@@ -36,6 +65,31 @@ public class SettingsImpl implements Extension {
    */
   public final int MaxSubscriptionRegions;
 
+  /**
+   * The number of recently requested bounding boxes to cache the regions of.
+   */
+  public final int RegionCacheSize;
+
+  /**
+   * The number of levels below the maximum zoom depth that dense regions may be split to.  0 disables splitting.
+   */
+  public final int RegionSplitDepth;
+
+  /**
+   * The number of active users above which a region splits into four child regions.
+   */
+  public final int RegionSplitThreshold;
+
+  /**
+   * The number of active users in all the descendants of a split region below which it merges them back.
+   */
+  public final int RegionMergeThreshold;
+
+  /**
+   * How long a split lasts unless it's renewed by its region.  Splits are renewed every summary interval.
+   */
+  public final FiniteDuration RegionSplitLease;
+
   /**
    * The number of points that need to be in a region/summary region before it decides to cluster them.
    */
@@ -58,16 +112,109 @@ public class SettingsImpl implements Extension {
    */
   public final FiniteDuration ExpiryInterval;
 
+  /**
+   * The interval at which regions should send all their points to their summary region, rather than just the
+   * changes.  Must be less than the expiry interval, so that regions that have nothing new to say don't expire.
+   */
+  public final FiniteDuration SummarySnapshotInterval;
+
+  /**
+   * The window over which regions batch the positions they publish, into one message per window.  0 publishes each
+   * position as it arrives.
+   */
+  public final FiniteDuration PublishWindow;
+
   /**
    * The interval at which subscribers should batch their points to send to clients.
+   *
+   * For clients that acknowledge their updates, this is only the starting interval, it's halved while the client
+   * keeps up, and doubled while it falls behind, within the min and max batch intervals.
    */
   public final FiniteDuration SubscriberBatchInterval;
 
+  /**
+   * The shortest interval at which subscribers batch their points for clients that keep up.
+   */
+  public final FiniteDuration SubscriberMinBatchInterval;
+
+  /**
+   * The longest interval at which subscribers batch their points for clients that fall behind.
+   */
+  public final FiniteDuration SubscriberMaxBatchInterval;
+
+  /**
+   * The number of updates a client may have unacknowledged before its subscriber holds back further updates.
+   */
+  public final int SubscriberMaxInFlight;
+
+  /**
+   * The most points a subscriber sends its client for its viewport.  Beyond this, the points in the viewport are
+   * clustered into the square of the largest number whose square doesn't exceed it.
+   */
+  public final int SubscriberPointBudget;
+
+  /**
+   * The number of buckets the actors ticked at each interval are spread over, so that their ticks are staggered over
+   * the interval.
+   */
+  public final int TickBuckets;
+
   /**
    * Geospatial functions.
    */
   public final GeoFunctions GeoFunctions;
 
+  /**
+   * Whether the region manager client should batch position updates per backend node, rather than sending each one
+   * on its own.
+   */
+  public final boolean PositionBatchEnabled;
+
+  /**
+   * The longest time a position update is held back for batching.
+   */
+  public final FiniteDuration PositionBatchInterval;
+
+  /**
+   * The number of position updates at which a batch is sent, without waiting for the batch interval.
+   */
+  public final int PositionBatchMaxSize;
+
+  /**
+   * Whether regions are cluster sharded entities, placed by their load, rather than placed by consistent hashing.
+   */
+  public final boolean ShardingEnabled;
+
+  /**
+   * The number of shards that regions are spread over, when sharded.
+   */
+  public final int ShardingNumberOfShards;
+
+  /**
+   * The interval at which nodes report the load of the shards to each other.
+   */
+  public final FiniteDuration ShardingLoadReportInterval;
+
+  /**
+   * How many times the mean load of the nodes the most loaded node must carry before a shard is moved off it.
+   */
+  public final double ShardingRebalanceThreshold;
+
+  /**
+   * The address of the node that hosts the shared journal store, when regions are sharded with the shared journal.
+   */
+  public final String ShardingJournalStoreNode;
+
+  /**
+   * Whether the latency from user moves to each stage of delivering them to clients is recorded.
+   */
+  public final boolean MetricsEnabled;
+
+  /**
+   * The interval over which latency metrics are reported.
+   */
+  public final FiniteDuration MetricsInterval;
+
   /**
    * Whether this node should run the bots it knows about.
    */
@@ -77,4 +224,39 @@ public class SettingsImpl implements Extension {
    * How many bots to create in total
    */
   public final int TotalNumberOfBots;
+
+  /**
+   * Whether the bots are simulated in bulk by a few engine actors, rather than each being its own actor.
+   */
+  public final boolean BotsSimulated;
+
+  /**
+   * The number of engine actors that the simulated bots are shared between.
+   */
+  public final int SimulationEngines;
+
+  /**
+   * The interval at which the engines step a slice of their bots.
+   */
+  public final FiniteDuration SimulationStepInterval;
+
+  /**
+   * The interval at which each simulated bot moves and reports its position.
+   */
+  public final FiniteDuration SimulationUpdateInterval;
+
+  /**
+   * The number of position subscribers each engine keeps, viewing the areas around its bots.
+   */
+  public final int SimulationViewers;
+
+  /**
+   * The interval at which each viewer of an engine moves its viewport.
+   */
+  public final FiniteDuration SimulationViewportInterval;
+
+  /**
+   * The fraction of simulated bots that walk the original trails, crowding them, rather than an offset copy.
+   */
+  public final double SimulationHotSpotFraction;
 }
@@ -0,0 +1,91 @@
+package backend;
+
+import akka.actor.*;
+import akka.cluster.Cluster;
+import akka.contrib.pattern.DistributedPubSubExtension;
+import akka.contrib.pattern.DistributedPubSubMediator.Publish;
+import akka.contrib.pattern.DistributedPubSubMediator.Subscribe;
+import backend.RegionShardingProtocol.ShardLoadReport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares the load of the region shards between the nodes.
+ *
+ * Every interval, publishes the rate of the messages this node sent to each shard.  It also collects the reports of
+ * all the nodes, its own included, and sums them into the load of each shard across the cluster, for the shard
+ * allocation strategy.  Reports that haven't been renewed for a few intervals, from nodes that have gone, are dropped.
+ */
+public class ShardLoadReporter extends UntypedActor {
+
+    public static Props props(ShardLoads loads) {
+        return Props.create(ShardLoadReporter.class, () -> new ShardLoadReporter(loads));
+    }
+
+    private static final String TOPIC = "shardLoads";
+    private static final Object TICK = new Object();
+
+    private final ShardLoads loads;
+
+    private final ActorRef mediator = DistributedPubSubExtension.get(getContext().system()).mediator();
+    private final SettingsImpl settings = Settings.SettingsProvider.get(getContext().system());
+    private final String node = Cluster.get(getContext().system()).selfAddress().toString();
+
+    /**
+     * The last report of each node, with the System.nanoTime() it was received at.
+     */
+    private final Map<String, ShardLoadReport> reports = new HashMap<>();
+    private final Map<String, Long> received = new HashMap<>();
+
+    private long lastTick = System.nanoTime();
+
+    private final Cancellable tickTask = getContext().system().scheduler().schedule(
+            settings.ShardingLoadReportInterval, settings.ShardingLoadReportInterval, self(), TICK,
+            getContext().dispatcher(), self());
+
+    public ShardLoadReporter(ShardLoads loads) {
+        this.loads = loads;
+    }
+
+    public void preStart() throws Exception {
+        mediator.tell(new Subscribe(TOPIC, self()), self());
+    }
+
+    public void postStop() throws Exception {
+        tickTask.cancel();
+    }
+
+    public void onReceive(Object msg) throws Exception {
+        if (msg == TICK) {
+            long now = System.nanoTime();
+            double seconds = Math.max(now - lastTick, 1) / 1e9;
+            lastTick = now;
+
+            Map<String, Double> rates = new HashMap<>();
+            loads.takeCounts().forEach((shardId, count) -> rates.put(shardId, count / seconds));
+            mediator.tell(new Publish(TOPIC, new ShardLoadReport(node, rates)), self());
+
+        } else if (msg instanceof ShardLoadReport) {
+            ShardLoadReport report = (ShardLoadReport) msg;
+            long now = System.nanoTime();
+            reports.put(report.getNode(), report);
+            received.put(report.getNode(), now);
+
+            long expired = now - settings.ShardingLoadReportInterval.toNanos() * 3;
+            received.entrySet().removeIf(entry -> {
+                if (entry.getValue() - expired < 0) {
+                    reports.remove(entry.getKey());
+                    return true;
+                } else {
+                    return false;
+                }
+            });
+
+            Map<String, Double> totals = new HashMap<>();
+            reports.values().forEach(r -> r.getLoads().forEach((shardId, load) -> totals.merge(shardId, load,
+                    Double::sum)));
+            loads.setLoads(totals);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package backend;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The load of the region shards.
+ *
+ * Counts the messages this node sends to each shard, and holds the load of each shard across the whole cluster, as
+ * last worked out from the reports of all the nodes.
+ */
+public class ShardLoads {
+
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    private volatile Map<String, Double> loads = ImmutableMap.of();
+
+    /**
+     * Count a message sent to the given shard.
+     */
+    public void count(String shardId) {
+        counts.computeIfAbsent(shardId, s -> new LongAdder()).increment();
+    }
+
+    /**
+     * Take the counts since the last time they were taken.
+     */
+    public Map<String, Long> takeCounts() {
+        Map<String, Long> taken = new HashMap<>();
+        counts.forEach((shardId, count) -> {
+            long sum = count.sumThenReset();
+            if (sum > 0) {
+                taken.put(shardId, sum);
+            }
+        });
+        return taken;
+    }
+
+    /**
+     * The number of messages per second sent to each shard, by all the nodes of the cluster.
+     */
+    public Map<String, Double> getLoads() {
+        return loads;
+    }
+
+    void setLoads(Map<String, Double> loads) {
+        this.loads = ImmutableMap.copyOf(loads);
+    }
+}
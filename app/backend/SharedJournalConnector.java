@@ -0,0 +1,58 @@
+package backend;
+
+import akka.actor.*;
+import akka.persistence.journal.leveldb.SharedLeveldbJournal;
+import scala.concurrent.duration.Duration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects the shared journal of this node to the shared journal store.
+ *
+ * The store is a single actor on one node of the cluster, which the shard coordinator persists its shard allocations
+ * to wherever it runs.  The shared journal holds back the coordinator's requests until it's told where the store is,
+ * so this keeps looking the store up until it's found, in case its node comes up later than this one.
+ */
+public class SharedJournalConnector extends UntypedActor {
+
+    public static Props props(ActorPath store) {
+        return Props.create(SharedJournalConnector.class, () -> new SharedJournalConnector(store));
+    }
+
+    /**
+     * The name of the store actor, under /user on the node that hosts it.
+     */
+    public static final String STORE = "shardingJournalStore";
+
+    private static final Object IDENTIFY = new Object();
+
+    private final ActorPath store;
+
+    private SharedJournalConnector(ActorPath store) {
+        this.store = store;
+    }
+
+    public void preStart() throws Exception {
+        identify();
+    }
+
+    public void onReceive(Object msg) throws Exception {
+        if (msg == IDENTIFY) {
+            identify();
+
+        } else if (msg instanceof ActorIdentity) {
+            ActorRef ref = ((ActorIdentity) msg).getRef();
+            if (ref != null) {
+                SharedLeveldbJournal.setStore(ref, getContext().system());
+                getContext().stop(self());
+            } else {
+                getContext().system().scheduler().scheduleOnce(Duration.create(1, TimeUnit.SECONDS), self(), IDENTIFY,
+                        getContext().dispatcher(), self());
+            }
+        }
+    }
+
+    private void identify() {
+        getContext().actorSelection(store).tell(new Identify(store), self());
+    }
+}
@@ -0,0 +1,92 @@
+package backend;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * The latency from user moves to a stage of the pipeline that delivers them to clients.
+ *
+ * The latency of a position is measured against its timestamp, which is taken when the move is received from the
+ * user, so each stage reports the time taken from the move to that stage, and the time spent between two stages is
+ * the difference between them.  The clocks of the nodes are assumed to be in sync, positions that appear to arrive
+ * before they were sent count as no latency.
+ *
+ * Recording is wait free, so it can be done by any number of actors at once.  The recorded latencies are reported
+ * per interval, the interval is rolled over by the metrics extension.
+ */
+public class StageMetrics implements StageMetricsMXBean {
+
+    private final String name;
+    private final boolean enabled;
+    private final Recorder recorder = new Recorder(3);
+
+    private volatile Histogram interval = new Histogram(3);
+    private volatile double throughput = 0;
+    private long intervalStart = System.nanoTime();
+
+    StageMetrics(String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+    }
+
+    /**
+     * The name of the stage.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record a position passing the stage, if metrics are enabled.
+     *
+     * @param timestamp The timestamp of the position, in milliseconds since the epoch.
+     */
+    public void record(long timestamp) {
+        if (enabled) {
+            recorder.recordValue(Math.max(System.currentTimeMillis() - timestamp, 0));
+        }
+    }
+
+    /**
+     * End the current interval, making what was recorded in it what's reported.
+     */
+    synchronized void roll() {
+        long now = System.nanoTime();
+        Histogram histogram = recorder.getIntervalHistogram();
+        interval = histogram;
+        throughput = histogram.getTotalCount() / (Math.max(now - intervalStart, 1) / 1e9);
+        intervalStart = now;
+    }
+
+    public long getCount() {
+        return interval.getTotalCount();
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public double getMean() {
+        return interval.getMean();
+    }
+
+    public long getPercentile50() {
+        return interval.getValueAtPercentile(50);
+    }
+
+    public long getPercentile90() {
+        return interval.getValueAtPercentile(90);
+    }
+
+    public long getPercentile99() {
+        return interval.getValueAtPercentile(99);
+    }
+
+    public long getPercentile999() {
+        return interval.getValueAtPercentile(99.9);
+    }
+
+    public long getMax() {
+        return interval.getMaxValue();
+    }
+}
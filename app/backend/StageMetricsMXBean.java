@@ -0,0 +1,32 @@
+package backend;
+
+/**
+ * The latency and throughput of a stage, over the last metrics interval, as exposed through JMX.
+ */
+public interface StageMetricsMXBean {
+
+    /**
+     * The number of positions that passed the stage.
+     */
+    long getCount();
+
+    /**
+     * The number of positions per second that passed the stage.
+     */
+    double getThroughput();
+
+    /**
+     * The mean latency from the user move to the stage, in milliseconds.
+     */
+    double getMean();
+
+    long getPercentile50();
+
+    long getPercentile90();
+
+    long getPercentile99();
+
+    long getPercentile999();
+
+    long getMax();
+}
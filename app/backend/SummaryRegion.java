@@ -3,20 +3,19 @@ package backend;
 import akka.actor.*;
 import akka.contrib.pattern.DistributedPubSubExtension;
 import akka.contrib.pattern.DistributedPubSubMediator.Publish;
-import scala.concurrent.duration.Deadline;
+import backend.RegionManagerProtocol.RequestSnapshot;
 import models.backend.*;
 
-import play.libs.F.Tuple;
-
-import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * Summary regions receive region points from their 4 sub regions, cluster them, and publishes the resulting points
- * to subscribers of the topic with the region id.
+ * Summary regions receive region points deltas from their 4 sub regions, cluster them, and publishes the resulting
+ * points to subscribers of the topic with the region id.  Summary regions one level above the max zoom depth also
+ * receive the deltas of the child regions that their sub regions are split into.  A region drops its users once they're
+ * sent to its children instead, and merged children drop theirs, so each user is summarised from one region only.
  */
 public class SummaryRegion extends UntypedActor {
 
@@ -31,48 +30,71 @@ public class SummaryRegion extends UntypedActor {
 
     private final RegionId regionId;
     private final BoundingBox regionBounds;
+    private final PointClusterer clusterer = settings.GeoFunctions.clusterer();
+    private final RegionPointsTracker tracker;
 
     public SummaryRegion(RegionId regionId) {
         this.regionId = regionId;
 
         this.regionBounds = settings.GeoFunctions.boundingBoxForRegion(regionId);
+        this.tracker = new RegionPointsTracker(regionId, settings.SummarySnapshotInterval);
     }
 
     /**
      * The active points for this summary region, keyed by summary region id.
-     * <p>
-     * The values are the points for the summary region, tupled with the deadline they are valid until.
      */
-    private final Map<RegionId, Tuple<Collection<PointOfInterest>, Deadline>> activePoints = new HashMap<>();
+    private final Map<RegionId, RegionPointsReplica> activePoints = new HashMap<>();
+
+    /**
+     * The clustering sums of the active points of each sub region, so that only the sub regions that reported
+     * new points need to be summed again.
+     */
+    private final Map<RegionId, PointClusterer.Boxes> activeBoxes = new HashMap<>();
+
+    /**
+     * When the points of each sub region expire.
+     */
+    private final ExpiryBuckets<RegionId> expiries = new ExpiryBuckets<>(settings.SummaryInterval);
 
 
-    private final Cancellable tickTask = getContext().system().scheduler().schedule(settings.SummaryInterval.$div(2),
-            settings.SummaryInterval, self(), TICK, getContext().dispatcher(), self());
+    private final Cancellable tickTask = Ticks.TicksProvider.get(getContext().system())
+            .schedule(settings.SummaryInterval, self(), TICK);
 
     public void postStop() throws Exception {
         tickTask.cancel();
     }
 
     public void onReceive(Object msg) throws Exception {
-        if (msg instanceof RegionPoints) {
-            RegionPoints points = (RegionPoints) msg;
+        if (msg instanceof RegionPointsDelta) {
+            RegionPointsDelta delta = (RegionPointsDelta) msg;
+
+            RegionPointsReplica replica = activePoints.computeIfAbsent(delta.getRegionId(),
+                    r -> new RegionPointsReplica());
+            if (replica.apply(delta)) {
+                clusterer.sum(activeBoxes.computeIfAbsent(delta.getRegionId(), r -> clusterer.newBoxes()),
+                        regionBounds, replica.getPoints());
+            }
+            if (replica.shouldRequestSnapshot()) {
+                // the sender is the sub region, the region managers pass it on
+                getSender().tell(new RequestSnapshot(delta.getRegionId()), self());
+            }
+            expiries.schedule(delta.getRegionId(), System.nanoTime() + settings.ExpiryInterval.toNanos());
 
-            activePoints.put(points.getRegionId(), new Tuple<>(points.getPoints(), Deadline.now().$plus(settings.ExpiryInterval)));
+        } else if (msg instanceof RequestSnapshot) {
+            getContext().parent().tell(tracker.snapshot(), self());
 
         } else if (msg == TICK) {
             // expire inactive points
-            Set<RegionId> expired = activePoints.entrySet().stream()
-                    .filter(user -> user.getValue()._2.isOverdue())
-                    .map(e -> e.getKey())
-                    .collect(Collectors.toSet());
-            expired.forEach(activePoints::remove);
+            expiries.expire(System.nanoTime(), expired -> {
+                activePoints.remove(expired);
+                activeBoxes.remove(expired);
+            });
 
-            // Cluster
-            RegionPoints points = new RegionPoints(regionId, settings.GeoFunctions.cluster(regionId.getName(),
-                    regionBounds, activePoints.values().stream().flatMap(u -> u._1.stream()).collect(Collectors.toList())));
+            // Cluster from the sums of the sub regions
+            RegionPoints points = new RegionPoints(regionId, cluster());
 
-            // propagate the points to higher level summary region via the manager
-            getContext().parent().tell(points, self());
+            // propagate the changed points to higher level summary region via the manager
+            tracker.delta(points.getPoints()).ifPresent(delta -> getContext().parent().tell(delta, self()));
 
             // publish total count to subscribers
             mediator.tell(new Publish(regionId.getName(), points), self());
@@ -83,4 +105,16 @@ public class SummaryRegion extends UntypedActor {
             }
         }
     }
+
+    private List<PointOfInterest> cluster() {
+        int size = activeBoxes.values().stream().mapToInt(PointClusterer.Boxes::size).sum();
+        if (clusterer.shouldCluster(size)) {
+            clusterer.begin(regionBounds);
+            activeBoxes.values().forEach(clusterer::add);
+            return clusterer.finish(regionId.getName());
+        } else {
+            return activePoints.values().stream().flatMap(replica -> replica.getPoints().stream())
+                    .collect(Collectors.toList());
+        }
+    }
 }
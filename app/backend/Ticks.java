@@ -0,0 +1,21 @@
+package backend;
+
+import akka.actor.*;
+
+/**
+ * The ticks of this node, which periodic actors share rather than each scheduling their own.
+ */
+public class Ticks extends AbstractExtensionId<TicksImpl>
+        implements ExtensionIdProvider {
+    public final static Ticks TicksProvider = new Ticks();
+
+    private Ticks() {}
+
+    public Ticks lookup() {
+        return Ticks.TicksProvider;
+    }
+
+    public TicksImpl createExtension(ExtendedActorSystem system) {
+        return new TicksImpl(system);
+    }
+}
@@ -0,0 +1,120 @@
+package backend;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import akka.actor.Extension;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers periodic ticks to actors from one timer per interval, rather than one scheduler task per actor.
+ *
+ * The actors ticked at an interval are spread at random over a number of buckets, and the timer of the interval
+ * ticks one bucket per step, in turn, so each bucket is ticked once per interval, and the ticks of all the actors are
+ * staggered over the interval rather than all arriving at once.  The timers of different intervals, and of different
+ * nodes, start at a random offset from each other.
+ */
+public class TicksImpl implements Extension {
+
+    private final ActorSystem system;
+    private final int buckets;
+
+    /**
+     * The shortest step, the tick duration of the scheduler, since timers can't fire more often than that.
+     */
+    private final long minStep;
+
+    private final ConcurrentHashMap<FiniteDuration, Ticker> tickers = new ConcurrentHashMap<>();
+
+    TicksImpl(ActorSystem system) {
+        this.system = system;
+        this.buckets = Settings.SettingsProvider.get(system).TickBuckets;
+        this.minStep = Duration.apply(system.settings().config().getMilliseconds("akka.scheduler.tick-duration"),
+                TimeUnit.MILLISECONDS).toNanos();
+    }
+
+    /**
+     * Send the given message to the given actor at the given interval, until cancelled.
+     *
+     * The first message is sent between about half an interval and an interval from now.  The receiver should cancel
+     * the returned task when it stops.
+     */
+    public Cancellable schedule(FiniteDuration interval, ActorRef receiver, Object message) {
+        return tickers.computeIfAbsent(interval, Ticker::new).add(receiver, message);
+    }
+
+    /**
+     * The timer of an interval, and its buckets.
+     */
+    private class Ticker implements Runnable {
+        private final List<Set<Tick>> buckets = new ArrayList<>();
+
+        /**
+         * The bucket to tick on the next step.
+         */
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Ticker(FiniteDuration interval) {
+            long step = Math.max(interval.toNanos() / TicksImpl.this.buckets, minStep);
+            long count = Math.max(interval.toNanos() / step, 1);
+            for (int i = 0; i < count; i++) {
+                buckets.add(ConcurrentHashMap.newKeySet());
+            }
+            system.scheduler().schedule(Duration.fromNanos(ThreadLocalRandom.current().nextLong(step)),
+                    Duration.fromNanos(step), this, system.dispatcher());
+        }
+
+        public void run() {
+            int bucket = Math.floorMod(next.getAndIncrement(), buckets.size());
+            for (Tick tick : buckets.get(bucket)) {
+                tick.receiver.tell(tick.message, ActorRef.noSender());
+            }
+        }
+
+        /**
+         * Add a receiver to a random bucket among those ticked in the second half of the interval from now.
+         */
+        private Tick add(ActorRef receiver, Object message) {
+            int count = buckets.size();
+            int offset = count / 2 + ThreadLocalRandom.current().nextInt(count - count / 2);
+            Set<Tick> bucket = buckets.get(Math.floorMod(next.get() + offset, count));
+            Tick tick = new Tick(bucket, receiver, message);
+            bucket.add(tick);
+            return tick;
+        }
+    }
+
+    /**
+     * A receiver in a bucket.
+     */
+    private static class Tick implements Cancellable {
+        private final Set<Tick> bucket;
+        private final ActorRef receiver;
+        private final Object message;
+        private volatile boolean cancelled = false;
+
+        private Tick(Set<Tick> bucket, ActorRef receiver, Object message) {
+            this.bucket = bucket;
+            this.receiver = receiver;
+            this.message = message;
+        }
+
+        public boolean cancel() {
+            cancelled = true;
+            return bucket.remove(this);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
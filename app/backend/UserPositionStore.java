@@ -0,0 +1,154 @@
+package backend;
+
+import models.backend.*;
+import models.backend.PointOfInterest.UserPosition;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The active user positions of a region.
+ *
+ * The positions are held in parallel primitive arrays, indexed through a map from user id, so updating the position
+ * of a known user writes the arrays in place.  The slots are kept dense, so that clustering can sweep the arrays
+ * directly.  Expiry is tracked in buckets, so that expiring only touches the users that actually expire.  Moving a
+ * user to a later bucket does allocate, a boxed bucket and a set entry, but only once per expiry resolution per user,
+ * not once per update.
+ */
+public class UserPositionStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The slot of each user, keyed by user id.
+     */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private double[] lats = new double[INITIAL_CAPACITY];
+    private double[] lngs = new double[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    private final ExpiryBuckets<String> expiries;
+
+    /**
+     * @param expiryResolution The resolution at which positions are expired.
+     */
+    public UserPositionStore(FiniteDuration expiryResolution) {
+        this.expiries = new ExpiryBuckets<>(expiryResolution);
+    }
+
+    /**
+     * Update the position of a user.
+     *
+     * @param pos    The new position.
+     * @param expiry The System.nanoTime() after which the position expires.
+     */
+    public void update(UserPosition pos, long expiry) {
+        Integer slot = slots.get(pos.getId());
+        int i;
+        if (slot != null) {
+            i = slot;
+        } else {
+            if (size == ids.length) {
+                grow();
+            }
+            i = size++;
+            // Hold on to the id of the first message, later messages for the same user share it
+            ids[i] = pos.getId();
+            slots.put(ids[i], i);
+        }
+        lats[i] = pos.getPosition().getLat();
+        lngs[i] = pos.getPosition().getLng();
+        timestamps[i] = pos.getTimestamp();
+        expiries.schedule(ids[i], expiry);
+    }
+
+    /**
+     * Remove all the positions that have expired.
+     *
+     * @param now The current System.nanoTime().
+     */
+    public void expire(long now) {
+        expiries.expire(now, id -> remove(slots.get(id)));
+    }
+
+    /**
+     * Remove the position in the given slot, by moving the last position into it.
+     */
+    private void remove(int i) {
+        slots.remove(ids[i]);
+        int last = --size;
+        if (i != last) {
+            ids[i] = ids[last];
+            lats[i] = lats[last];
+            lngs[i] = lngs[last];
+            timestamps[i] = timestamps[last];
+            slots.put(ids[i], i);
+        }
+        ids[last] = null;
+    }
+
+    /**
+     * Remove all the positions.
+     */
+    public void clear() {
+        slots.clear();
+        Arrays.fill(ids, 0, size, null);
+        size = 0;
+        expiries.clear();
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        lats = Arrays.copyOf(lats, capacity);
+        lngs = Arrays.copyOf(lngs, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the position in the given slot.
+     */
+    public UserPosition positionAt(int i) {
+        return new UserPosition(ids[i], timestamps[i], new LatLng(lats[i], lngs[i]));
+    }
+
+    /**
+     * Cluster the positions, feeding the coordinates straight from the arrays into the clusterer.
+     *
+     * @param clusterer The clusterer to use.
+     * @param id        The id of the region
+     * @param bbox      The bounding box within which to cluster
+     * @return The clustered points
+     */
+    public List<PointOfInterest> cluster(PointClusterer clusterer, String id, BoundingBox bbox) {
+        if (clusterer.shouldCluster(size)) {
+            clusterer.begin(bbox);
+            for (int i = 0; i < size; i++) {
+                clusterer.add(lats[i], lngs[i], 1, i);
+            }
+            return clusterer.finish(id, this::positionAt);
+        } else {
+            List<PointOfInterest> points = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                points.add(positionAt(i));
+            }
+            return points;
+        }
+    }
+}
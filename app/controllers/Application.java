@@ -2,7 +2,11 @@ package controllers;
 
 import actors.Actors;
 import actors.ClientConnection;
-import com.fasterxml.jackson.databind.JsonNode;
+import backend.Metrics;
+import backend.StageMetrics;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import play.libs.Akka;
+import play.libs.Json;
 import play.mvc.*;
 
 public class Application extends Controller {
@@ -15,9 +19,37 @@ public class Application extends Controller {
   }
 
   /**
-   * The WebSocket
+   * The WebSocket.  Events are JSON text, encoded and decoded by the client connection.
    */
-  public static WebSocket<JsonNode> stream(String email) {
+  public static WebSocket<String> stream(String email) {
       return WebSocket.withActor(upstream -> ClientConnection.props(email, upstream, Actors.regionManagerClient()));
   }
-}
\ No newline at end of file
+
+  /**
+   * The binary WebSocket, for clients that opt in to the compact binary format for position updates.
+   */
+  public static WebSocket<byte[]> binaryStream(String email) {
+      return WebSocket.withActor(upstream -> ClientConnection.props(email, upstream, Actors.regionManagerClient(),
+              true));
+  }
+
+  /**
+   * The latency from user moves to each stage of delivering them to clients, over the last metrics interval, in
+   * milliseconds.
+   */
+  public static Result metrics() {
+      ObjectNode stages = Json.newObject();
+      for (StageMetrics stage : Metrics.MetricsProvider.get(Akka.system()).Stages) {
+          stages.putObject(stage.getName())
+                  .put("count", stage.getCount())
+                  .put("throughput", stage.getThroughput())
+                  .put("mean", stage.getMean())
+                  .put("p50", stage.getPercentile50())
+                  .put("p90", stage.getPercentile90())
+                  .put("p99", stage.getPercentile99())
+                  .put("p999", stage.getPercentile999())
+                  .put("max", stage.getMax());
+      }
+      return ok(stages);
+  }
+}
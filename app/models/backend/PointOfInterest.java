@@ -36,6 +36,15 @@ public abstract class PointOfInterest {
         return position;
     }
 
+    /**
+     * Whether the given point is the same point of interest, at the same position, regardless of when either was
+     * created.
+     */
+    public boolean isSameAs(PointOfInterest other) {
+        return other != null && getClass() == other.getClass() && id.equals(other.id) &&
+                position.equals(other.position);
+    }
+
     public static class UserPosition extends PointOfInterest {
         public UserPosition(String id, long timestamp, LatLng position) {
             super(id, timestamp, position);
@@ -53,6 +62,11 @@ public abstract class PointOfInterest {
         public int getCount() {
             return count;
         }
+
+        @Override
+        public boolean isSameAs(PointOfInterest other) {
+            return super.isSameAs(other) && count == ((Cluster) other).count;
+        }
     }
 
 }
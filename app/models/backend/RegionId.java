@@ -8,23 +8,83 @@ package models.backend;
  *
  * The x value starts at 0 at -180 West, and goes to 2 ^^ zoomLevel at 180 East.  The y value starts at 0 at -90 South,
  * and goes to 2 ^^ zoomLevel at 90 North.
+ *
+ * Each region id also has a packed 64 bit key, holding the zoom level in the top 6 bits and the x and y values
+ * interleaved into a Morton code in the lower 58 bits, so regions that are near each other have keys that are near
+ * each other.  The key is used for hashing and lookups, the name is only built when it's asked for.
  */
 public class RegionId {
 
+    private static final int COORDINATE_BITS = 29;
+    private static final long COORDINATE_MASK = (1l << COORDINATE_BITS) - 1;
+
     private final int zoomLevel;
     private final int x;
     private final int y;
-    private final String name;
+    private final long key;
+
+    /**
+     * The name, built on first use.  Racing threads may each build it, which is harmless since strings are immutable.
+     */
+    private String name;
 
     public RegionId(int zoomLevel, int x, int y) {
         this.zoomLevel = zoomLevel;
         this.x = x;
         this.y = y;
 
-        this.name = "region-" + zoomLevel + "-" + x + "-" + y;
+        this.key = ((long) zoomLevel << (2 * COORDINATE_BITS)) | interleave(x) | (interleave(y) << 1);
+    }
+
+    /**
+     * Get the region id for the given key.
+     */
+    public static RegionId fromKey(long key) {
+        return new RegionId((int) (key >>> (2 * COORDINATE_BITS)), deinterleave(key), deinterleave(key >>> 1));
+    }
+
+    /**
+     * Spread the lower 29 bits of the given value out over the even bits of a long.
+     */
+    private static long interleave(int value) {
+        long v = value & COORDINATE_MASK;
+        v = (v | (v << 16)) & 0x0000ffff0000ffffl;
+        v = (v | (v << 8)) & 0x00ff00ff00ff00ffl;
+        v = (v | (v << 4)) & 0x0f0f0f0f0f0f0f0fl;
+        v = (v | (v << 2)) & 0x3333333333333333l;
+        v = (v | (v << 1)) & 0x5555555555555555l;
+        return v;
+    }
+
+    /**
+     * Gather the even bits of the lower 58 bits of the given key back into an int.
+     */
+    private static int deinterleave(long key) {
+        long v = key & 0x0155555555555555l;
+        v = (v | (v >>> 1)) & 0x3333333333333333l;
+        v = (v | (v >>> 2)) & 0x0f0f0f0f0f0f0f0fl;
+        v = (v | (v >>> 4)) & 0x00ff00ff00ff00ffl;
+        v = (v | (v >>> 8)) & 0x0000ffff0000ffffl;
+        v = (v | (v >>> 16)) & 0x00000000ffffffffl;
+        return (int) v;
+    }
+
+    /**
+     * The packed key of this region.
+     *
+     * Keys are unique for all regions that lie on the map, that is, whose x and y values are between 0 and
+     * 2 ^^ zoomLevel inclusive.
+     */
+    public long getKey() {
+        return key;
     }
 
     public String getName() {
+        String name = this.name;
+        if (name == null) {
+            name = "region-" + zoomLevel + "-" + x + "-" + y;
+            this.name = name;
+        }
         return name;
     }
 
@@ -42,7 +102,7 @@ public class RegionId {
 
     @Override
     public String toString() {
-        return name;
+        return getName();
     }
 
     @Override
@@ -61,9 +121,6 @@ public class RegionId {
 
     @Override
     public int hashCode() {
-        int result = zoomLevel;
-        result = 31 * result + x;
-        result = 31 * result + y;
-        return result;
+        return Long.hashCode(key);
     }
 }
@@ -0,0 +1,57 @@
+package models.backend;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collection;
+
+/**
+ * The changes to the points of interest for a given regionId since the last delta.
+ *
+ * Deltas are numbered in sequence per region, so that a receiver can tell when it has missed one.  A snapshot
+ * delta holds all the points of the region and replaces whatever the receiver had, so that receivers that missed a
+ * delta can recover.
+ */
+public class RegionPointsDelta {
+
+    private final RegionId regionId;
+    private final long sequenceNr;
+    private final boolean snapshot;
+    private final Collection<PointOfInterest> updated;
+    private final Collection<String> removed;
+
+    /**
+     * @param regionId   The region the points are in.
+     * @param sequenceNr The sequence number of this delta.
+     * @param snapshot   Whether this delta holds all the points of the region.
+     * @param updated    The points that are new or have changed.
+     * @param removed    The ids of the points that are gone.
+     */
+    public RegionPointsDelta(RegionId regionId, long sequenceNr, boolean snapshot,
+                             Collection<PointOfInterest> updated, Collection<String> removed) {
+        this.regionId = regionId;
+        this.sequenceNr = sequenceNr;
+        this.snapshot = snapshot;
+        this.updated = ImmutableList.copyOf(updated);
+        this.removed = ImmutableList.copyOf(removed);
+    }
+
+    public RegionId getRegionId() {
+        return regionId;
+    }
+
+    public long getSequenceNr() {
+        return sequenceNr;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public Collection<PointOfInterest> getUpdated() {
+        return updated;
+    }
+
+    public Collection<String> getRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,35 @@
+package models.backend;
+
+import com.google.common.collect.ImmutableList;
+import models.backend.PointOfInterest.UserPosition;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A batch of user positions, published to the topic of a region.
+ *
+ * Holds the latest position of each user that moved in the region during the publish window.
+ */
+public class RegionPositions {
+
+    private final RegionId regionId;
+    private final List<UserPosition> positions;
+
+    /**
+     * @param regionId  The region whose topic the positions are published to.
+     * @param positions The positions.
+     */
+    public RegionPositions(RegionId regionId, Collection<UserPosition> positions) {
+        this.regionId = regionId;
+        this.positions = ImmutableList.copyOf(positions);
+    }
+
+    public RegionId getRegionId() {
+        return regionId;
+    }
+
+    public List<UserPosition> getPositions() {
+        return positions;
+    }
+}
@@ -0,0 +1,112 @@
+package backend;
+
+import com.typesafe.config.ConfigFactory;
+import models.backend.*;
+import models.backend.PointOfInterest.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the settings and the test data for the backend benchmarks.
+ *
+ * All data is generated from a fixed seed, so that runs are comparable with each other.
+ */
+public class BenchmarkData {
+
+    /**
+     * Points are spread evenly over the area.
+     */
+    public static final String UNIFORM = "uniform";
+
+    /**
+     * Most points are crowded around a few city centres in the area.
+     */
+    public static final String HOTSPOT = "hotspot";
+
+    private static final long SEED = 0x5eed;
+
+    /**
+     * The settings, as configured for the application.
+     */
+    public static SettingsImpl settings() {
+        return new SettingsImpl(ConfigFactory.load());
+    }
+
+    /**
+     * Generate positions within the given bounding box.
+     *
+     * @param bbox         The bounding box to generate the positions in.
+     * @param count        The number of positions.
+     * @param distribution Either {@link #UNIFORM} or {@link #HOTSPOT}.
+     */
+    public static LatLng[] positions(BoundingBox bbox, int count, String distribution) {
+        Random random = new Random(SEED);
+        double south = bbox.getSouthWest().getLat();
+        double west = bbox.getSouthWest().getLng();
+        double height = bbox.getNorthEast().getLat() - south;
+        double width = bbox.getNorthEast().getLng() - west;
+
+        // The city centres, placed away from the edges of the area
+        double[][] hotspots = new double[3][];
+        for (int i = 0; i < hotspots.length; i++) {
+            hotspots[i] = new double[] {0.2 + random.nextDouble() * 0.6, 0.2 + random.nextDouble() * 0.6};
+        }
+
+        LatLng[] positions = new LatLng[count];
+        for (int i = 0; i < count; i++) {
+            double y;
+            double x;
+            if (HOTSPOT.equals(distribution) && random.nextInt(10) < 9) {
+                double[] hotspot = hotspots[random.nextInt(hotspots.length)];
+                y = clamp(hotspot[0] + random.nextGaussian() * 0.02);
+                x = clamp(hotspot[1] + random.nextGaussian() * 0.02);
+            } else {
+                y = random.nextDouble();
+                x = random.nextDouble();
+            }
+            positions[i] = new LatLng(south + y * height, west + x * width);
+        }
+        return positions;
+    }
+
+    /**
+     * Generate points of interest within the given bounding box.
+     *
+     * Every eighth point is a cluster, as reported by a sub region, the rest are user positions.
+     */
+    public static List<PointOfInterest> points(BoundingBox bbox, int count, String distribution) {
+        Random random = new Random(SEED);
+        LatLng[] positions = positions(bbox, count, distribution);
+        List<PointOfInterest> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i % 8 == 7) {
+                points.add(new Cluster("cluster-" + i, i, positions[i], 2 + random.nextInt(100)));
+            } else {
+                points.add(new UserPosition("user-" + i, i, positions[i]));
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Generate viewing areas around the given positions, from street level up to the size of a continent.
+     */
+    public static BoundingBox[] viewports(LatLng[] positions) {
+        Random random = new Random(SEED);
+        BoundingBox[] viewports = new BoundingBox[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            double h = Math.pow(10, random.nextDouble() * 4 - 3) * 2;
+            double w = h * 2;
+            LatLng centre = positions[i];
+            viewports[i] = new BoundingBox(new LatLng(centre.getLat() - h / 2, centre.getLng() - w / 2),
+                    new LatLng(centre.getLat() + h / 2, centre.getLng() + w / 2));
+        }
+        return viewports;
+    }
+
+    private static double clamp(double d) {
+        return Math.min(Math.max(d, 0), 0.999999);
+    }
+}
@@ -0,0 +1,65 @@
+package backend;
+
+import models.backend.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the clustering done by regions and summary regions on every summary interval.
+ *
+ * Run with the gc profiler to see the allocation rate:
+ * {{{
+ * sbt "bench/run -prof gc .*ClusterBenchmark.*"
+ * }}}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ClusterBenchmark {
+
+    @Param({"16", "256", "4096", "65536", "1048576"})
+    public int pointCount;
+
+    @Param({BenchmarkData.UNIFORM, BenchmarkData.HOTSPOT})
+    public String distribution;
+
+    private GeoFunctions geoFunctions;
+    private int clusterDimension;
+    private RegionId regionId;
+    private BoundingBox regionBounds;
+    private List<PointOfInterest> points;
+    private PointClusterer clusterer;
+
+    @Setup
+    public void setup() {
+        SettingsImpl settings = BenchmarkData.settings();
+        geoFunctions = settings.GeoFunctions;
+        clusterDimension = settings.ClusterDimension;
+        // A summary region around the centre of London
+        regionId = geoFunctions.regionForPoint(new LatLng(51.507, -0.128), settings.MaxZoomDepth - 4);
+        regionBounds = geoFunctions.boundingBoxForRegion(regionId);
+        points = BenchmarkData.points(regionBounds, pointCount, distribution);
+        clusterer = geoFunctions.clusterer();
+    }
+
+    @Benchmark
+    public List<PointOfInterest> cluster() {
+        return geoFunctions.cluster(regionId.getName(), regionBounds, points);
+    }
+
+    @Benchmark
+    public List<PointOfInterest> reusedClusterer() {
+        return clusterer.cluster(regionId.getName(), regionBounds, points);
+    }
+
+    @Benchmark
+    public void groupNBoxes(Blackhole blackhole) {
+        geoFunctions.groupNBoxes(regionBounds, clusterDimension, points).forEach(blackhole::consume);
+    }
+}
@@ -0,0 +1,68 @@
+package backend;
+
+import models.backend.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the region calculations done for every position update and every change of viewing area.
+ *
+ * Each invocation works on the next of a fixed set of positions, so that the results aren't skewed by a single
+ * point.
+ * {{{
+ * sbt "bench/run -prof gc .*RegionMathBenchmark.*"
+ * }}}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RegionMathBenchmark {
+
+    private static final int SAMPLES = 1 << 16;
+
+    @Param({BenchmarkData.UNIFORM, BenchmarkData.HOTSPOT})
+    public String distribution;
+
+    private GeoFunctions geoFunctions;
+    private LatLng[] positions;
+    private BoundingBox[] viewports;
+    private RegionId[] regions;
+    private int next;
+
+    @Setup
+    public void setup() {
+        geoFunctions = BenchmarkData.settings().GeoFunctions;
+        BoundingBox world = new BoundingBox(new LatLng(-80, -180), new LatLng(80, 180));
+        positions = BenchmarkData.positions(world, SAMPLES, distribution);
+        viewports = BenchmarkData.viewports(positions);
+        regions = new RegionId[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            regions[i] = geoFunctions.regionForPoint(positions[i]);
+        }
+    }
+
+    private int nextSample() {
+        next = (next + 1) & (SAMPLES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public RegionId regionForPoint() {
+        return geoFunctions.regionForPoint(positions[nextSample()]);
+    }
+
+    @Benchmark
+    public Set<RegionId> regionsForBoundingBox() {
+        return geoFunctions.regionsForBoundingBox(viewports[nextSample()]);
+    }
+
+    @Benchmark
+    public BoundingBox boundingBoxForRegion() {
+        return geoFunctions.boundingBoxForRegion(regions[nextSample()]);
+    }
+}
@@ -0,0 +1,111 @@
+package backend;
+
+import backend.RegionManagerProtocol.*;
+import models.backend.*;
+import models.backend.PointOfInterest.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks serializing the messages sent between backend nodes.
+ *
+ * {{{
+ * sbt "bench/run -prof gc .*SerializerBenchmark.*"
+ * }}}
+ * The serialized sizes of the messages, for each point count, are printed by the main method instead, so they stay
+ * out of the benchmark output.
+ * {{{
+ * sbt "bench/runMain backend.SerializerBenchmark"
+ * }}}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    /**
+     * The number of points in the region points messages.  A clustered region sends up to 16, a region with fewer
+     * users than the clustering threshold sends each of them.
+     */
+    @Param({"1", "16", "256"})
+    public int pointCount;
+
+    private final BackendSerializer serializer = new BackendSerializer();
+
+    private UpdateUserPosition updateUserPosition;
+    private RegionPoints regionPoints;
+    private UpdateRegionPoints updateRegionPoints;
+    private byte[] updateUserPositionBytes;
+    private byte[] regionPointsBytes;
+    private byte[] updateRegionPointsBytes;
+
+    @Setup
+    public void setup() {
+        GeoFunctions geoFunctions = BenchmarkData.settings().GeoFunctions;
+        RegionId regionId = geoFunctions.regionForPoint(new LatLng(51.507, -0.128), 10);
+        BoundingBox bounds = geoFunctions.boundingBoxForRegion(regionId);
+        // Not clustered, so that there are as many points as asked for
+        List<PointOfInterest> points = BenchmarkData.points(bounds, pointCount, BenchmarkData.HOTSPOT);
+
+        UserPosition position = new UserPosition("bot-1-2552-123-0-0-Richmond Park", System.currentTimeMillis(),
+                new LatLng(51.44, -0.27));
+        updateUserPosition = new UpdateUserPosition(geoFunctions.regionForPoint(position.getPosition()), position);
+        regionPoints = new RegionPoints(regionId, points);
+        updateRegionPoints = new UpdateRegionPoints(geoFunctions.summaryRegionForRegion(regionId).get(),
+                new RegionPointsDelta(regionId, 42, true, points, Collections.emptyList()));
+
+        updateUserPositionBytes = serializer.toBinary(updateUserPosition);
+        regionPointsBytes = serializer.toBinary(regionPoints);
+        updateRegionPointsBytes = serializer.toBinary(updateRegionPoints);
+    }
+
+    /**
+     * Print the serialized sizes of the messages for each point count.
+     */
+    public static void main(String... args) throws Exception {
+        for (String count : SerializerBenchmark.class.getField("pointCount").getAnnotation(Param.class).value()) {
+            SerializerBenchmark benchmark = new SerializerBenchmark();
+            benchmark.pointCount = Integer.parseInt(count);
+            benchmark.setup();
+            System.out.println(count + " points: UpdateUserPosition " + benchmark.updateUserPositionBytes.length +
+                    " bytes, RegionPoints " + benchmark.regionPointsBytes.length +
+                    " bytes, UpdateRegionPoints " + benchmark.updateRegionPointsBytes.length + " bytes");
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeUpdateUserPosition() {
+        return serializer.toBinary(updateUserPosition);
+    }
+
+    @Benchmark
+    public Object deserializeUpdateUserPosition() {
+        return serializer.fromBinaryJava(updateUserPositionBytes, null);
+    }
+
+    @Benchmark
+    public byte[] serializeRegionPoints() {
+        return serializer.toBinary(regionPoints);
+    }
+
+    @Benchmark
+    public Object deserializeRegionPoints() {
+        return serializer.fromBinaryJava(regionPointsBytes, null);
+    }
+
+    @Benchmark
+    public byte[] serializeUpdateRegionPoints() {
+        return serializer.toBinary(updateRegionPoints);
+    }
+
+    @Benchmark
+    public Object deserializeUpdateRegionPoints() {
+        return serializer.fromBinaryJava(updateRegionPointsBytes, null);
+    }
+}
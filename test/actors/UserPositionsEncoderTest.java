@@ -0,0 +1,108 @@
+package actors;
+
+import actors.ClientConnectionProtocol.RemovePositions;
+import actors.ClientConnectionProtocol.UserPositions;
+import com.google.common.collect.ImmutableList;
+import models.backend.BoundingBox;
+import models.backend.LatLng;
+import models.backend.PointOfInterest;
+import models.backend.PointOfInterest.Cluster;
+import models.backend.PointOfInterest.UserPosition;
+import org.geojson.Feature;
+import org.geojson.FeatureCollection;
+import org.geojson.Point;
+import org.junit.Test;
+import play.libs.Json;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the encoder produces exactly the JSON that serialising geojson features used to.
+ */
+public class UserPositionsEncoderTest {
+
+    /**
+     * The original encoding, through a geojson feature collection and a JSON tree.
+     */
+    private static String baseline(Collection<PointOfInterest> positions, Optional<BoundingBox> area) {
+        FeatureCollection collection = new FeatureCollection();
+        collection.setFeatures(positions.stream().map(pos -> {
+            Feature feature = new Feature();
+            Point point = new Point();
+            point.setCoordinates(pos.getPosition().toLngLatAlt());
+            feature.setGeometry(point);
+            feature.setId(pos.getId());
+            feature.setProperty("timestamp", pos.getTimestamp());
+            if (pos instanceof Cluster) {
+                feature.setProperty("count", ((Cluster) pos).getCount());
+            }
+            return feature;
+        }).collect(Collectors.toList()));
+        area.ifPresent(bbox -> collection.setBbox(bbox.toBbox()));
+        return Json.stringify(Json.toJson(new UserPositions(collection)));
+    }
+
+    private final List<PointOfInterest> points = ImmutableList.of(
+            new UserPosition("bot-1-2552-17-0-a-Trail", 1403158441000L, new LatLng(51.5073, -0.1277)),
+            new Cluster("region-14-8130-5765-3", 1403158441001L, new LatLng(-33.8688, 151.2093), 42),
+            new UserPosition("quote\"back\\slashé☃\n", -1, new LatLng(-90, -180)),
+            new Cluster("c", 0, new LatLng(90, 180), Integer.MAX_VALUE),
+            new UserPosition("tiny", Long.MAX_VALUE, new LatLng(1e-7, -0.0)),
+            new UserPosition("huge", Long.MIN_VALUE, new LatLng(1.0E10, 123456.789012345)));
+
+    @Test
+    public void sameJsonAsGeoJsonFeatures() throws Exception {
+        UserPositionsEncoder encoder = new UserPositionsEncoder();
+        List<Optional<BoundingBox>> areas = ImmutableList.of(Optional.empty(),
+                Optional.of(new BoundingBox(new LatLng(-10.5, 170), new LatLng(10.25, 190))));
+        for (Optional<BoundingBox> area : areas) {
+            assertEquals(baseline(points, area), encoder.encode(points, area));
+            assertEquals(baseline(ImmutableList.of(), area), encoder.encode(ImmutableList.of(), area));
+            // Again, reusing the buffer of the encoder
+            assertEquals(baseline(points, area), encoder.encode(points, area));
+        }
+    }
+
+    @Test
+    public void sameJsonForRandomPoints() throws Exception {
+        UserPositionsEncoder encoder = new UserPositionsEncoder();
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            List<PointOfInterest> positions = new ArrayList<>();
+            for (int j = random.nextInt(50); j > 0; j--) {
+                LatLng latLng = new LatLng(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+                if (random.nextBoolean()) {
+                    positions.add(new UserPosition("user-" + random.nextInt(), random.nextLong(), latLng));
+                } else {
+                    positions.add(new Cluster("region-" + j, random.nextLong(), latLng, random.nextInt(100000)));
+                }
+            }
+            assertEquals(baseline(positions, Optional.empty()), encoder.encode(positions, Optional.empty()));
+        }
+    }
+
+    @Test
+    public void sameJsonWithSharedFeatures() throws Exception {
+        SharedFeatures features = new SharedFeatures();
+        UserPositionsEncoder topicEncoder = new UserPositionsEncoder();
+        for (PointOfInterest point : points.subList(0, 4)) {
+            features.put(new SharedFeatures.Feature(point, topicEncoder.encodeFeature(point)));
+        }
+        // A feature of another instance with the same id must not be used
+        PointOfInterest tiny = points.get(4);
+        features.put(new SharedFeatures.Feature(new UserPosition(tiny.getId(), 0, new LatLng(0, 0)), "\"stale\""));
+
+        Optional<BoundingBox> area = Optional.of(new BoundingBox(new LatLng(-10.5, 170), new LatLng(10.25, 190)));
+        assertEquals(baseline(points, area), new UserPositionsEncoder(features).encode(points, area));
+    }
+
+    @Test
+    public void removePositions() throws Exception {
+        List<String> ids = ImmutableList.of("a", "region-14-1-2-3", "quote\"☃");
+        assertEquals(Json.stringify(Json.toJson(new RemovePositions(ids))),
+                new UserPositionsEncoder().encodeRemoved(ids));
+    }
+}
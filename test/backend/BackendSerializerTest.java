@@ -0,0 +1,278 @@
+package backend;
+
+import akka.actor.ActorSystem;
+import akka.serialization.SerializationExtension;
+import backend.RegionManagerProtocol.*;
+import backend.RegionShardingProtocol.ShardLoadReport;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.typesafe.config.ConfigFactory;
+import models.backend.*;
+import models.backend.PointOfInterest.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BackendSerializerTest {
+
+    private static ActorSystem system;
+
+    private final BackendSerializer serializer = new BackendSerializer();
+
+    @BeforeClass
+    public static void startSystem() {
+        // The serialization bindings of application.conf, without the cluster
+        system = ActorSystem.create("BackendSerializerTest", ConfigFactory.parseString(
+                "akka.actor.provider = \"akka.actor.LocalActorRefProvider\"\n" +
+                "akka.extensions = []").withFallback(ConfigFactory.load()));
+    }
+
+    @AfterClass
+    public static void stopSystem() {
+        system.shutdown();
+        system.awaitTermination();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T roundTrip(T obj) {
+        Object result = serializer.fromBinary(serializer.toBinary(obj));
+        assertEquals(obj.getClass(), result.getClass());
+        return (T) result;
+    }
+
+    private static UserPosition user(String id, long timestamp, double lat, double lng) {
+        return new UserPosition(id, timestamp, new LatLng(lat, lng));
+    }
+
+    private static Cluster cluster(String id, long timestamp, double lat, double lng, int count) {
+        return new Cluster(id, timestamp, new LatLng(lat, lng), count);
+    }
+
+    private static void assertPoint(PointOfInterest expected, PointOfInterest actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getPosition(), actual.getPosition());
+        if (expected instanceof Cluster) {
+            assertEquals(((Cluster) expected).getCount(), ((Cluster) actual).getCount());
+        }
+    }
+
+    private static void assertPoints(Collection<? extends PointOfInterest> expected,
+                                     Collection<? extends PointOfInterest> actual) {
+        assertEquals(expected.size(), actual.size());
+        Iterator<? extends PointOfInterest> it = actual.iterator();
+        expected.forEach(point -> assertPoint(point, it.next()));
+    }
+
+    private static void assertDelta(RegionPointsDelta expected, RegionPointsDelta actual) {
+        assertEquals(expected.getRegionId(), actual.getRegionId());
+        assertEquals(expected.getSequenceNr(), actual.getSequenceNr());
+        assertEquals(expected.isSnapshot(), actual.isSnapshot());
+        assertPoints(expected.getUpdated(), actual.getUpdated());
+        assertEquals(new ArrayList<>(expected.getRemoved()), new ArrayList<>(actual.getRemoved()));
+    }
+
+    private final RegionId region = new RegionId(14, 8130, 5765);
+
+    private final List<PointOfInterest> points = ImmutableList.of(
+            user("bot-1-2552-17-0-a-Trail", 1403158441000L, 51.5073, -0.1277),
+            cluster("region-14-8130-5765-3", 1403158441001L, -33.8688, 151.2093, 42),
+            user("bot-2-2552-17-0-a-Trail", 1403158440990L, -90.0, -180.0),
+            cluster("region-14-8130-5765-7", -1L, 90.0, 180.0, Integer.MAX_VALUE),
+            user("nodash", 0L, 0.0, -0.0));
+
+    @Test
+    public void boundTypesUseTheSerializer() {
+        List<Object> messages = ImmutableList.of(
+                new UpdateUserPosition(region, user("a", 1, 1, 1)),
+                new UpdateUserPositions(ImmutableList.of()),
+                new UpdateRegionPoints(region, new RegionPointsDelta(region, 1, true, points, ImmutableList.of())),
+                new RegionPoints(region, points),
+                new RegionPositions(region, ImmutableList.of()),
+                new RegionPointsDelta(region, 1, true, points, ImmutableList.of()),
+                user("a", 1, 1, 1),
+                cluster("a", 1, 1, 1, 2),
+                new LatLng(1, 1),
+                region,
+                new ShardLoadReport("node", ImmutableMap.of()),
+                new UpdateRegionLoad(region, new RegionLoad(region, 1)),
+                new RegionSplit(region, true),
+                new RequestSnapshot(region));
+        for (Object message : messages) {
+            assertEquals(message.getClass().getName(), BackendSerializer.class,
+                    SerializationExtension.get(system).findSerializerFor(message).getClass());
+        }
+    }
+
+    @Test
+    public void userPosition() {
+        for (PointOfInterest point : points) {
+            assertPoint(point, roundTrip(point));
+        }
+    }
+
+    @Test
+    public void extremeTimestamps() {
+        for (long timestamp : new long[] {0, 1, -1, 63, -64, 64, -65, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            assertPoint(user("a-b", timestamp, 1, 1), roundTrip(user("a-b", timestamp, 1, 1)));
+            assertPoint(cluster("a-b", timestamp, 1, 1, 3), roundTrip(cluster("a-b", timestamp, 1, 1, 3)));
+        }
+    }
+
+    @Test
+    public void clusterAndUserPositionTags() {
+        // The same id, timestamp and position, the tag alone tells them apart
+        PointOfInterest asUser = roundTrip(user("region-1-0-0-1", 5, 1, 2));
+        PointOfInterest asCluster = roundTrip(cluster("region-1-0-0-1", 5, 1, 2, 0));
+        assertTrue(asUser instanceof UserPosition);
+        assertTrue(asCluster instanceof Cluster);
+        assertEquals(0, ((Cluster) asCluster).getCount());
+    }
+
+    @Test
+    public void latLng() {
+        for (LatLng latLng : new LatLng[] {new LatLng(0, 0), new LatLng(-0.0, -0.0), new LatLng(-89.999999, 179.5),
+                new LatLng(Double.MIN_VALUE, -Double.MAX_VALUE)}) {
+            LatLng result = roundTrip(latLng);
+            assertEquals(Double.doubleToRawLongBits(latLng.getLat()), Double.doubleToRawLongBits(result.getLat()));
+            assertEquals(Double.doubleToRawLongBits(latLng.getLng()), Double.doubleToRawLongBits(result.getLng()));
+        }
+    }
+
+    @Test
+    public void regionId() {
+        for (RegionId regionId : new RegionId[] {new RegionId(0, 0, 0), region, new RegionId(17, 131071, 131071),
+                new RegionId(1, -1, -2), new RegionId(30, Integer.MAX_VALUE, Integer.MIN_VALUE)}) {
+            RegionId result = roundTrip(regionId);
+            assertEquals(regionId.getZoomLevel(), result.getZoomLevel());
+            assertEquals(regionId.getX(), result.getX());
+            assertEquals(regionId.getY(), result.getY());
+        }
+    }
+
+    @Test
+    public void updateUserPosition() {
+        UpdateUserPosition update = roundTrip(new UpdateUserPosition(region, (UserPosition) points.get(0)));
+        assertEquals(region, update.getRegionId());
+        assertPoint(points.get(0), update.getUserPosition());
+    }
+
+    @Test
+    public void updateUserPositions() {
+        List<UpdateUserPosition> updates = ImmutableList.of(
+                new UpdateUserPosition(region, (UserPosition) points.get(0)),
+                new UpdateUserPosition(new RegionId(14, 0, 0), (UserPosition) points.get(2)),
+                new UpdateUserPosition(new RegionId(2, -1, 3), (UserPosition) points.get(4)));
+        List<UpdateUserPosition> result = roundTrip(new UpdateUserPositions(updates)).getUpdates();
+        assertEquals(updates.size(), result.size());
+        for (int i = 0; i < updates.size(); i++) {
+            assertEquals(updates.get(i).getRegionId(), result.get(i).getRegionId());
+            assertPoint(updates.get(i).getUserPosition(), result.get(i).getUserPosition());
+        }
+        assertTrue(roundTrip(new UpdateUserPositions(ImmutableList.of())).getUpdates().isEmpty());
+    }
+
+    @Test
+    public void regionPoints() {
+        RegionPoints result = roundTrip(new RegionPoints(region, points));
+        assertEquals(region, result.getRegionId());
+        assertPoints(points, result.getPoints());
+    }
+
+    @Test
+    public void regionPositions() {
+        List<UserPosition> positions = ImmutableList.of((UserPosition) points.get(0), (UserPosition) points.get(2));
+        RegionPositions result = roundTrip(new RegionPositions(region, positions));
+        assertEquals(region, result.getRegionId());
+        assertPoints(positions, result.getPositions());
+    }
+
+    @Test
+    public void regionPointsDelta() {
+        RegionPointsDelta snapshot = new RegionPointsDelta(region, 1, true, points, ImmutableList.of());
+        assertDelta(snapshot, roundTrip(snapshot));
+
+        RegionPointsDelta delta = new RegionPointsDelta(region, 300, false, points.subList(0, 2),
+                ImmutableList.of("bot-3-2552-17-0-a-Trail", "region-14-8130-5765-9", "nodash", "trailing-"));
+        assertDelta(delta, roundTrip(delta));
+    }
+
+    @Test
+    public void updateRegionPoints() {
+        RegionPointsDelta delta = new RegionPointsDelta(region, 7, false, points, ImmutableList.of("gone"));
+        UpdateRegionPoints result = roundTrip(new UpdateRegionPoints(new RegionId(13, 4065, 2882), delta));
+        assertEquals(new RegionId(13, 4065, 2882), result.getRegionId());
+        assertDelta(delta, result.getRegionPointsDelta());
+    }
+
+    @Test
+    public void shardLoadReport() {
+        Map<String, Double> loads = ImmutableMap.of("0", 0.0, "42", 1234.5, "99", 1e-9);
+        ShardLoadReport result = roundTrip(new ShardLoadReport("akka.tcp://application@10.0.0.1:2552", loads));
+        assertEquals("akka.tcp://application@10.0.0.1:2552", result.getNode());
+        assertEquals(loads, result.getLoads());
+    }
+
+    @Test
+    public void updateRegionLoad() {
+        RegionId child = new RegionId(15, 16260, 11530);
+        UpdateRegionLoad result = roundTrip(new UpdateRegionLoad(region, new RegionLoad(child, 1500)));
+        assertEquals(region, result.getRegionId());
+        assertEquals(child, result.getRegionLoad().getRegionId());
+        assertEquals(1500, result.getRegionLoad().getLoad());
+    }
+
+    @Test
+    public void regionSplit() {
+        assertTrue(roundTrip(new RegionSplit(region, true)).isSplit());
+        assertFalse(roundTrip(new RegionSplit(region, false)).isSplit());
+        assertEquals(region, roundTrip(new RegionSplit(region, false)).getRegionId());
+    }
+
+    @Test
+    public void requestSnapshot() {
+        assertEquals(region, roundTrip(new RequestSnapshot(region)).getRegionId());
+    }
+
+    @Test
+    public void idDictionary() {
+        // Ids sharing a prefix write it once, then refer to it
+        String prefix = "region-14-8130-5765-";
+        List<PointOfInterest> shared = new ArrayList<>();
+        List<PointOfInterest> bare = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            shared.add(cluster(prefix + i, i, 1, 1, i));
+            bare.add(cluster(Integer.toString(i), i, 1, 1, i));
+        }
+        RegionPoints sharedPoints = new RegionPoints(region, shared);
+        int prefixCost = serializer.toBinary(sharedPoints).length -
+                serializer.toBinary(new RegionPoints(region, bare)).length;
+        // Both write their prefix once, the bare ids the empty one
+        assertEquals(prefix.length(), prefixCost);
+        assertPoints(shared, roundTrip(sharedPoints).getPoints());
+
+        // Prefixes interleaved, reused, empty, and ids that are only a prefix, or need more than one byte of index
+        List<PointOfInterest> mixed = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            mixed.add(user("user-" + i + "-x", i, 1, 1));
+            mixed.add(user("user-" + (i % 3) + "-y", i, 1, 1));
+            mixed.add(user("prefix-only-", i, 1, 1));
+            mixed.add(user("plain" + i, i, 1, 1));
+            mixed.add(user("ünïcödé-ид-" + i, i, 1, 1));
+        }
+        assertPoints(mixed, roundTrip(new RegionPoints(region, mixed)).getPoints());
+    }
+
+    @Test
+    public void dictionaryIsPerMessage() {
+        // Each message can be read on its own, whatever was written before it
+        byte[] first = serializer.toBinary(new RegionPoints(region, points));
+        byte[] second = serializer.toBinary(new RegionPoints(region, points));
+        assertArrayEquals(first, second);
+    }
+}
@@ -0,0 +1,70 @@
+package backend;
+
+import akka.actor.ActorRef;
+import akka.dispatch.Envelope;
+import backend.CoalescingMailbox.CoalescingMessageQueue;
+import com.google.common.collect.ImmutableList;
+import models.backend.LatLng;
+import models.backend.PointOfInterest.UserPosition;
+import models.backend.RegionId;
+import models.backend.RegionPositions;
+import org.junit.Test;
+
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class CoalescingMailboxTest {
+
+    private static UserPosition pos(String id, long timestamp) {
+        return new UserPosition(id, timestamp, new LatLng(timestamp, timestamp));
+    }
+
+    private static void enqueue(CoalescingMessageQueue queue, Object message) {
+        queue.enqueue(ActorRef.noSender(), new Envelope(message, ActorRef.noSender()));
+    }
+
+    @Test
+    public void keepsTheLatestPositionOfEachUser() {
+        CoalescingMessageQueue queue = new CoalescingMessageQueue();
+        enqueue(queue, pos("a", 1));
+        enqueue(queue, pos("b", 1));
+        enqueue(queue, pos("a", 3));
+        enqueue(queue, pos("a", 2));
+
+        assertEquals(2, queue.numberOfMessages());
+        assertEquals(3, ((UserPosition) queue.dequeue().message()).getTimestamp());
+        assertEquals("b", ((UserPosition) queue.dequeue().message()).getId());
+
+        // Once dequeued, a position is queued again
+        enqueue(queue, pos("a", 4));
+        assertEquals(4, ((UserPosition) queue.dequeue().message()).getTimestamp());
+        assertNull(queue.dequeue());
+    }
+
+    @Test
+    public void mergesTheBatchesOfEachRegion() {
+        CoalescingMessageQueue queue = new CoalescingMessageQueue();
+        RegionId region = new RegionId(14, 1, 2);
+        RegionId other = new RegionId(14, 2, 2);
+        enqueue(queue, new RegionPositions(region, ImmutableList.of(pos("a", 1), pos("b", 5))));
+        enqueue(queue, "other");
+        enqueue(queue, new RegionPositions(other, ImmutableList.of(pos("c", 1))));
+        enqueue(queue, new RegionPositions(region, ImmutableList.of(pos("b", 4), pos("a", 2), pos("d", 1))));
+
+        assertEquals(3, queue.numberOfMessages());
+        RegionPositions merged = (RegionPositions) queue.dequeue().message();
+        assertEquals(region, merged.getRegionId());
+        assertEquals(ImmutableList.of("a", "b", "d"),
+                merged.getPositions().stream().map(UserPosition::getId).collect(Collectors.toList()));
+        assertEquals(ImmutableList.of(2L, 5L, 1L),
+                merged.getPositions().stream().map(UserPosition::getTimestamp).collect(Collectors.toList()));
+        assertEquals("other", queue.dequeue().message());
+        assertEquals(other, ((RegionPositions) queue.dequeue().message()).getRegionId());
+
+        // Once dequeued, a batch is queued again
+        enqueue(queue, new RegionPositions(region, ImmutableList.of(pos("a", 3))));
+        assertEquals(1, ((RegionPositions) queue.dequeue().message()).getPositions().size());
+        assertFalse(queue.hasMessages());
+    }
+}
@@ -0,0 +1,113 @@
+package backend;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.typesafe.config.ConfigFactory;
+import models.backend.BoundingBox;
+import models.backend.LatLng;
+import models.backend.RegionId;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks regionsForBoundingBox against the search through the zoom levels that it replaced.
+ */
+public class GeoFunctionsTest {
+
+    private static SettingsImpl settings(int maxZoomDepth, int maxSubscriptionRegions) {
+        return new SettingsImpl(ConfigFactory.parseString(
+                "reactiveMaps.maxZoomDepth = " + maxZoomDepth + "\n" +
+                "reactiveMaps.maxSubscriptionRegions = " + maxSubscriptionRegions).withFallback(ConfigFactory.load()));
+    }
+
+    /**
+     * The original implementation, which tries each zoom level from the max zoom depth up until the bounding box
+     * is covered by few enough regions.
+     */
+    private static Set<RegionId> baselineRegions(SettingsImpl settings, BoundingBox bbox, int zoomLevel) {
+        if (zoomLevel == 0) {
+            return ImmutableSet.of(new RegionId(0, 0, 0));
+        } else {
+            int axisSteps = 1 << zoomLevel;
+            RegionId southWestRegion = settings.GeoFunctions.regionForPoint(bbox.getSouthWest(), zoomLevel);
+            RegionId northEastRegion = settings.GeoFunctions.regionForPoint(bbox.getNorthEast(), zoomLevel);
+            int xLength = northEastRegion.getX() - southWestRegion.getX() + 1;
+            int yLength = northEastRegion.getY() - southWestRegion.getY() + 1;
+            int numRegions = xLength * yLength;
+            if (numRegions <= 0) {
+                return ImmutableSet.of(new RegionId(0, 0, 0));
+            } else if (settings.MaxSubscriptionRegions >= numRegions) {
+                List<RegionId> regions = new ArrayList<>(numRegions);
+                for (int i = 0; i < numRegions; i++) {
+                    int y = i / xLength;
+                    int x = i % xLength;
+                    regions.add(new RegionId(zoomLevel, settings.GeoFunctions.modPositive(southWestRegion.getX() + x,
+                            axisSteps), southWestRegion.getY() + y));
+                }
+                return ImmutableSet.copyOf(regions);
+            } else {
+                return baselineRegions(settings, bbox, zoomLevel - 1);
+            }
+        }
+    }
+
+    private static void assertSameRegions(SettingsImpl settings, BoundingBox bbox) {
+        List<RegionId> expected = ImmutableList.copyOf(baselineRegions(settings, bbox, settings.MaxZoomDepth));
+        // Twice, the second time from the cache
+        for (int i = 0; i < 2; i++) {
+            List<RegionId> actual = ImmutableList.copyOf(settings.GeoFunctions.regionsForBoundingBox(bbox));
+            assertEquals(bbox.getSouthWest() + " " + bbox.getNorthEast(), expected, actual);
+        }
+    }
+
+    private static BoundingBox bbox(double south, double west, double north, double east) {
+        return new BoundingBox(new LatLng(south, west), new LatLng(north, east));
+    }
+
+    @Test
+    public void sameRegionsAsTheSearchThroughZoomLevels() {
+        Random random = new Random(42);
+        // Beyond a max zoom depth of 15, the number of regions the search counts at the max zoom depth can overflow an
+        // int, and it gives up with the whole world, so it's no reference there
+        for (SettingsImpl settings : ImmutableList.of(settings(14, 6), settings(14, 1), settings(10, 20),
+                settings(15, 4))) {
+            for (int i = 0; i < 20000; i++) {
+                // Spans from a fraction of a cell to the whole world, with a log uniform size
+                double height = 180 * Math.pow(2, -random.nextDouble() * (settings.MaxZoomDepth + 2));
+                double width = 360 * Math.pow(2, -random.nextDouble() * (settings.MaxZoomDepth + 2));
+                double south = -90 + random.nextDouble() * (180 - height);
+                // Viewports can start beyond the antimeridian either way
+                double west = -200 + random.nextDouble() * 400;
+                assertSameRegions(settings, bbox(south, west, south + height, west + width));
+            }
+        }
+    }
+
+    @Test
+    public void sameRegionsAtTheEdges() {
+        SettingsImpl settings = settings(14, 6);
+        List<BoundingBox> boxes = ImmutableList.of(
+                bbox(-90, -180, 90, 180),
+                bbox(0, 0, 0, 0),
+                bbox(-90, -180, -90, -180),
+                bbox(51.5, -0.2, 51.6, 0.1),
+                bbox(-10, 170, 10, 190),
+                bbox(-10, -190, 10, -170),
+                bbox(-10, 179.99, 10, 180.01),
+                // An exact cell at the max zoom depth, and its corner
+                bbox(0, 0, 180d / (1 << 14), 360d / (1 << 14)),
+                // Inverted boxes
+                bbox(10, 10, -10, -10),
+                bbox(10, -10, -10, 10),
+                bbox(-10, 10, 10, -10));
+        for (BoundingBox bbox : boxes) {
+            assertSameRegions(settings, bbox);
+        }
+    }
+}